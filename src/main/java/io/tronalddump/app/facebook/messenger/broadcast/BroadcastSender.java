@@ -0,0 +1,31 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.broadcast;
+
+/**
+ * Sends broadcast messages, which usually reach subscribers outside the 24 hour messaging window and must thus be
+ * sent with a message tag.
+ *
+ * @author Marcel Overdijk
+ */
+public interface BroadcastSender {
+
+    /**
+     * Sends the given text to the given recipient through the given page ({@code null} for the default page).
+     */
+    void send(String pageId, String recipientId, String text);
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.broadcast;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Progress of a broadcast, saved after every page of subscribers so an interrupted broadcast resumes where it
+ * stopped, with the same quote.
+ *
+ * @author Marcel Overdijk
+ */
+public class Checkpoint {
+
+    private final String broadcastId;
+    private String leaseId;
+    private String quote;
+    private String cursor;
+    private long sent;
+    private long failed;
+    private boolean done;
+
+    public Checkpoint(final String broadcastId) {
+        this.broadcastId = requireNonNull(broadcastId, "'broadcastId' must not be null");
+    }
+
+    public String getBroadcastId() {
+        return broadcastId;
+    }
+
+    /**
+     * Returns the id of the lease this checkpoint was acquired with, which must still be held to save it.
+     */
+    public String getLeaseId() {
+        return leaseId;
+    }
+
+    public void setLeaseId(String leaseId) {
+        this.leaseId = leaseId;
+    }
+
+    public String getQuote() {
+        return quote;
+    }
+
+    public void setQuote(String quote) {
+        this.quote = quote;
+    }
+
+    /**
+     * Returns the cursor of the next page of subscribers to send to, or {@code null} to start at the first page.
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public void setSent(long sent) {
+        this.sent = sent;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public void setDone(boolean done) {
+        this.done = done;
+    }
+}
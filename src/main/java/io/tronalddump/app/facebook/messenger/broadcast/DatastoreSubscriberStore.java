@@ -0,0 +1,196 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.broadcast;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Text;
+import com.google.appengine.api.datastore.Transaction;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link SubscriberStore} backed by the App Engine Datastore.
+ * <p>
+ * Subscribers are {@code Subscriber} entities keyed by sender id and are read in pages with Datastore cursors.
+ * Checkpoints are {@code Broadcast} entities keyed by broadcast id; leases are acquired, and checkpoints saved, in
+ * transactions so only one broadcast run sends at a time. Subscriptions are changed in transactions too.
+ *
+ * @author Marcel Overdijk
+ */
+public class DatastoreSubscriberStore implements SubscriberStore {
+
+    private static final String SUBSCRIBER_KIND = "Subscriber";
+    private static final String BROADCAST_KIND = "Broadcast";
+
+    private final DatastoreService datastore;
+
+    public DatastoreSubscriberStore(final DatastoreService datastore) {
+        this.datastore = requireNonNull(datastore, "'datastore' must not be null");
+    }
+
+    @Override
+    public boolean subscribe(Subscriber subscriber) {
+        Key key = KeyFactory.createKey(SUBSCRIBER_KIND, subscriber.getSenderId());
+        Transaction tx = datastore.beginTransaction();
+        try {
+            try {
+                datastore.get(tx, key);
+                return false;
+            } catch (EntityNotFoundException e) {
+                // Not subscribed yet.
+            }
+            Entity entity = new Entity(key);
+            entity.setUnindexedProperty("pageId", subscriber.getPageId());
+            entity.setUnindexedProperty("subscribed", System.currentTimeMillis());
+            datastore.put(tx, entity);
+            tx.commit();
+            return true;
+        } catch (ConcurrentModificationException e) {
+            // A concurrent request of the same sender subscribed first.
+            return false;
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+        }
+    }
+
+    @Override
+    public boolean unsubscribe(String senderId) {
+        Key key = KeyFactory.createKey(SUBSCRIBER_KIND, senderId);
+        Transaction tx = datastore.beginTransaction();
+        try {
+            try {
+                datastore.get(tx, key);
+            } catch (EntityNotFoundException e) {
+                return false;
+            }
+            datastore.delete(tx, key);
+            tx.commit();
+            return true;
+        } catch (ConcurrentModificationException e) {
+            // A concurrent request of the same sender unsubscribed first.
+            return false;
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+        }
+    }
+
+    @Override
+    public SubscriberPage getSubscribers(String cursor, int limit) {
+        FetchOptions fetchOptions = FetchOptions.Builder.withLimit(limit).chunkSize(limit);
+        if (cursor != null) {
+            fetchOptions.startCursor(Cursor.fromWebSafeString(cursor));
+        }
+        QueryResultList<Entity> entities = datastore.prepare(new Query(SUBSCRIBER_KIND)).asQueryResultList(fetchOptions);
+        List<Subscriber> subscribers = new ArrayList<>(entities.size());
+        for (Entity entity : entities) {
+            subscribers.add(new Subscriber(entity.getKey().getName(), (String) entity.getProperty("pageId")));
+        }
+        String next = entities.size() < limit ? null : entities.getCursor().toWebSafeString();
+        return new SubscriberPage(subscribers, next);
+    }
+
+    @Override
+    public Checkpoint acquireCheckpoint(String broadcastId, long leaseMillis) {
+        Key key = KeyFactory.createKey(BROADCAST_KIND, broadcastId);
+        Transaction tx = datastore.beginTransaction();
+        try {
+            Entity entity;
+            try {
+                entity = datastore.get(tx, key);
+            } catch (EntityNotFoundException e) {
+                entity = new Entity(key);
+            }
+            long now = System.currentTimeMillis();
+            Long lease = (Long) entity.getProperty("leaseExpires");
+            if (lease != null && lease > now) {
+                return null;
+            }
+            entity.setUnindexedProperty("leaseExpires", now + leaseMillis);
+            entity.setUnindexedProperty("leaseId", UUID.randomUUID().toString());
+            datastore.put(tx, entity);
+            tx.commit();
+            return toCheckpoint(entity);
+        } catch (ConcurrentModificationException e) {
+            return null;
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+        }
+    }
+
+    @Override
+    public boolean saveCheckpoint(Checkpoint checkpoint, long leaseMillis) {
+        Key key = KeyFactory.createKey(BROADCAST_KIND, checkpoint.getBroadcastId());
+        Transaction tx = datastore.beginTransaction();
+        try {
+            Entity entity;
+            try {
+                entity = datastore.get(tx, key);
+            } catch (EntityNotFoundException e) {
+                return false;
+            }
+            if (!checkpoint.getLeaseId().equals(entity.getProperty("leaseId"))) {
+                return false;
+            }
+            entity.setUnindexedProperty("quote", checkpoint.getQuote() != null ? new Text(checkpoint.getQuote()) : null);
+            entity.setUnindexedProperty("cursor", checkpoint.getCursor());
+            entity.setUnindexedProperty("sent", checkpoint.getSent());
+            entity.setUnindexedProperty("failed", checkpoint.getFailed());
+            entity.setUnindexedProperty("done", checkpoint.isDone());
+            entity.setUnindexedProperty("leaseExpires", System.currentTimeMillis() + leaseMillis);
+            datastore.put(tx, entity);
+            tx.commit();
+            return true;
+        } catch (ConcurrentModificationException e) {
+            return false;
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+        }
+    }
+
+    private static Checkpoint toCheckpoint(Entity entity) {
+        Checkpoint checkpoint = new Checkpoint(entity.getKey().getName());
+        checkpoint.setLeaseId((String) entity.getProperty("leaseId"));
+        Text quote = (Text) entity.getProperty("quote");
+        checkpoint.setQuote(quote != null ? quote.getValue() : null);
+        checkpoint.setCursor((String) entity.getProperty("cursor"));
+        checkpoint.setSent(entity.hasProperty("sent") ? (Long) entity.getProperty("sent") : 0);
+        checkpoint.setFailed(entity.hasProperty("failed") ? (Long) entity.getProperty("failed") : 0);
+        checkpoint.setDone(Boolean.TRUE.equals(entity.getProperty("done")));
+        return checkpoint;
+    }
+}
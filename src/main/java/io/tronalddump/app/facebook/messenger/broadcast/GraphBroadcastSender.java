@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.broadcast;
+
+import com.restfb.DefaultFacebookClient;
+import com.restfb.FacebookClient;
+import com.restfb.Parameter;
+import com.restfb.Version;
+import com.restfb.types.send.IdMessageRecipient;
+import com.restfb.types.send.Message;
+import com.restfb.types.send.SendResponse;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link BroadcastSender} posting to the Send API with the Graph API client directly, as the messenger's
+ * {@code SendOperations} can't add the {@code messaging_type} and {@code tag} parameters a tagged message needs.
+ * <p>
+ * Every page gets its own client with the page's access token; messages of unknown pages are sent with the default
+ * access token.
+ *
+ * @author Marcel Overdijk
+ */
+public class GraphBroadcastSender implements BroadcastSender {
+
+    private final FacebookClient defaultClient;
+    private final Map<String, FacebookClient> clients = new HashMap<>();
+    private final String tag;
+
+    /**
+     * @param accessToken the access token of the default page
+     * @param pageAccessTokens the access tokens of other pages by page id
+     * @param appSecret the app secret, used for {@code appsecret_proof}
+     * @param tag the message tag, e.g. {@code NON_PROMOTIONAL_SUBSCRIPTION}
+     */
+    public GraphBroadcastSender(final String accessToken, final Map<String, String> pageAccessTokens, final String appSecret, final String tag) {
+        requireNonNull(pageAccessTokens, "'pageAccessTokens' must not be null");
+        this.tag = requireNonNull(tag, "'tag' must not be null");
+        this.defaultClient = createClient(accessToken, appSecret);
+        for (Map.Entry<String, String> entry : pageAccessTokens.entrySet()) {
+            clients.put(entry.getKey(), createClient(entry.getValue(), appSecret));
+        }
+    }
+
+    @Override
+    public void send(String pageId, String recipientId, String text) {
+        FacebookClient client = pageId != null ? clients.getOrDefault(pageId, defaultClient) : defaultClient;
+        client.publish("me/messages", SendResponse.class,
+                Parameter.with("recipient", new IdMessageRecipient(recipientId)),
+                Parameter.with("message", new Message(text)),
+                Parameter.with("messaging_type", "MESSAGE_TAG"),
+                Parameter.with("tag", tag));
+    }
+
+    private static FacebookClient createClient(String accessToken, String appSecret) {
+        return new DefaultFacebookClient(accessToken, appSecret, Version.VERSION_2_8);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.broadcast;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * {@link SubscriberStore} keeping subscribers in memory, for running outside App Engine and for tests.
+ * Subscriptions are lost on restart.
+ *
+ * @author Marcel Overdijk
+ */
+public class InMemorySubscriberStore implements SubscriberStore {
+
+    private final TreeMap<String, Subscriber> subscribers = new TreeMap<>();
+    private final Map<String, Checkpoint> checkpoints = new HashMap<>();
+    private final Map<String, Long> leases = new HashMap<>();
+
+    @Override
+    public synchronized boolean subscribe(Subscriber subscriber) {
+        return subscribers.put(subscriber.getSenderId(), subscriber) == null;
+    }
+
+    @Override
+    public synchronized boolean unsubscribe(String senderId) {
+        return subscribers.remove(senderId) != null;
+    }
+
+    @Override
+    public synchronized SubscriberPage getSubscribers(String cursor, int limit) {
+        Map<String, Subscriber> tail = cursor == null ? subscribers : subscribers.tailMap(cursor, false);
+        List<Subscriber> page = new ArrayList<>(limit);
+        for (Subscriber subscriber : tail.values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(subscriber);
+        }
+        boolean last = page.size() < limit || subscribers.higherKey(page.get(page.size() - 1).getSenderId()) == null;
+        return new SubscriberPage(page, last ? null : page.get(page.size() - 1).getSenderId());
+    }
+
+    @Override
+    public synchronized Checkpoint acquireCheckpoint(String broadcastId, long leaseMillis) {
+        long now = System.currentTimeMillis();
+        Long lease = leases.get(broadcastId);
+        if (lease != null && lease > now) {
+            return null;
+        }
+        leases.put(broadcastId, now + leaseMillis);
+        Checkpoint checkpoint = checkpoints.computeIfAbsent(broadcastId, Checkpoint::new);
+        checkpoint.setLeaseId(UUID.randomUUID().toString());
+        return copy(checkpoint);
+    }
+
+    @Override
+    public synchronized boolean saveCheckpoint(Checkpoint checkpoint, long leaseMillis) {
+        Checkpoint saved = checkpoints.get(checkpoint.getBroadcastId());
+        if (saved == null || !saved.getLeaseId().equals(checkpoint.getLeaseId())) {
+            return false;
+        }
+        checkpoints.put(checkpoint.getBroadcastId(), copy(checkpoint));
+        leases.put(checkpoint.getBroadcastId(), System.currentTimeMillis() + leaseMillis);
+        return true;
+    }
+
+    private static Checkpoint copy(Checkpoint checkpoint) {
+        Checkpoint copy = new Checkpoint(checkpoint.getBroadcastId());
+        copy.setLeaseId(checkpoint.getLeaseId());
+        copy.setQuote(checkpoint.getQuote());
+        copy.setCursor(checkpoint.getCursor());
+        copy.setSent(checkpoint.getSent());
+        copy.setFailed(checkpoint.getFailed());
+        copy.setDone(checkpoint.isDone());
+        return copy;
+    }
+}
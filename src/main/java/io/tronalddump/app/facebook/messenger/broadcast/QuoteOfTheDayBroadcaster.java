@@ -0,0 +1,212 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.broadcast;
+
+import io.tronalddump.app.facebook.messenger.callback.FanOutExecutor;
+import io.tronalddump.client.TronaldClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Sends the quote of the day to all subscribers.
+ * <p>
+ * Subscribers are streamed from the {@link SubscriberStore} in pages. Sends are paced to {@code messagesPerSecond}
+ * to stay within the Send API rate limits and run on {@code parallelism} threads, as each send is a blocking HTTP
+ * call. After every page the {@link Checkpoint} is saved, so a broadcast that is interrupted (by the request
+ * deadline or an instance restart) resumes at the next page with the same quote when started again. A page that
+ * was in flight when an instance died may be sent twice. A run that finds its lease taken over when saving the
+ * checkpoint (e.g. after a long pause) stops right away. Messages are sent with the {@link BroadcastSender}, which
+ * tags them as they may reach subscribers outside the 24 hour messaging window.
+ *
+ * @author Marcel Overdijk
+ */
+public class QuoteOfTheDayBroadcaster {
+
+    private static final Logger logger = Logger.getLogger(QuoteOfTheDayBroadcaster.class.getName());
+
+    private final SubscriberStore store;
+    private final BroadcastSender sender;
+    private final TronaldClient tronaldClient;
+    private final FanOutExecutor executor;
+    private final int pageSize;
+    private final int parallelism;
+    private final long intervalNanos;
+    private final long leaseMillis;
+
+    public QuoteOfTheDayBroadcaster(final SubscriberStore store, final BroadcastSender sender, final TronaldClient tronaldClient, final FanOutExecutor executor, final int pageSize, final int parallelism, final double messagesPerSecond) {
+        this.store = requireNonNull(store, "'store' must not be null");
+        this.sender = requireNonNull(sender, "'sender' must not be null");
+        this.tronaldClient = requireNonNull(tronaldClient, "'tronaldClient' must not be null");
+        this.executor = requireNonNull(executor, "'executor' must not be null");
+        if (pageSize < 1 || parallelism < 1 || messagesPerSecond <= 0) {
+            throw new IllegalArgumentException("'pageSize', 'parallelism' and 'messagesPerSecond' must be greater than 0");
+        }
+        this.pageSize = pageSize;
+        this.parallelism = parallelism;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / messagesPerSecond);
+        // A page must fit in the lease, or a concurrent run could take over.
+        this.leaseMillis = TimeUnit.NANOSECONDS.toMillis(intervalNanos * pageSize) + TimeUnit.MINUTES.toMillis(1);
+    }
+
+    /**
+     * Sends (or resumes sending) the broadcast with the given id until it is done or the {@code deadline} (epoch
+     * millis) has passed.
+     *
+     * @return the report of this run, or {@code null} if another run of the broadcast is in progress
+     */
+    public Report broadcast(String broadcastId, long deadline) {
+        Checkpoint checkpoint = store.acquireCheckpoint(broadcastId, leaseMillis);
+        if (checkpoint == null) {
+            logger.info(format("Broadcast %s is already in progress", broadcastId));
+            return null;
+        }
+        long startNanos = System.nanoTime();
+        long sentBefore = checkpoint.getSent();
+        long failedBefore = checkpoint.getFailed();
+        if (checkpoint.isDone()) {
+            return new Report(checkpoint, 0, 0, 0);
+        }
+        if (checkpoint.getQuote() == null) {
+            checkpoint.setQuote("Quote of the day: " + tronaldClient.getRandomQuote().getValue());
+            if (!store.saveCheckpoint(checkpoint, leaseMillis)) {
+                return leaseLost(checkpoint, sentBefore, failedBefore, startNanos);
+            }
+        }
+        ExecutorService sendExecutor = executor.newExecutor(parallelism);
+        try {
+            long nextSlot = System.nanoTime();
+            while (!checkpoint.isDone() && System.currentTimeMillis() < deadline) {
+                SubscriberPage page = store.getSubscribers(checkpoint.getCursor(), pageSize);
+                AtomicLong sent = new AtomicLong();
+                AtomicLong failed = new AtomicLong();
+                List<CompletableFuture<Void>> sends = new ArrayList<>(page.getSubscribers().size());
+                for (Subscriber subscriber : page.getSubscribers()) {
+                    nextSlot = pace(nextSlot);
+                    sends.add(CompletableFuture.runAsync(() -> send(subscriber, checkpoint.getQuote(), sent, failed), sendExecutor));
+                }
+                CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).join();
+                checkpoint.setSent(checkpoint.getSent() + sent.get());
+                checkpoint.setFailed(checkpoint.getFailed() + failed.get());
+                checkpoint.setCursor(page.getCursor());
+                checkpoint.setDone(page.getCursor() == null);
+                if (!store.saveCheckpoint(checkpoint, checkpoint.isDone() ? 0 : leaseMillis)) {
+                    return leaseLost(checkpoint, sentBefore, failedBefore, startNanos);
+                }
+            }
+        } finally {
+            sendExecutor.shutdownNow();
+        }
+        if (!checkpoint.isDone()) {
+            // Release the lease so the next run resumes right away.
+            store.saveCheckpoint(checkpoint, 0);
+        }
+        Report report = new Report(checkpoint, checkpoint.getSent() - sentBefore, checkpoint.getFailed() - failedBefore,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        logger.info(report.toString());
+        return report;
+    }
+
+    private Report leaseLost(Checkpoint checkpoint, long sentBefore, long failedBefore, long startNanos) {
+        Report report = new Report(checkpoint, checkpoint.getSent() - sentBefore, checkpoint.getFailed() - failedBefore,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        logger.warning(format("Lease of broadcast %s was taken over, stopping: %s", checkpoint.getBroadcastId(), report));
+        return report;
+    }
+
+    private void send(Subscriber subscriber, String quote, AtomicLong sent, AtomicLong failed) {
+        try {
+            sender.send(subscriber.getPageId(), subscriber.getSenderId(), quote);
+            sent.incrementAndGet();
+        } catch (RuntimeException e) {
+            logger.log(Level.FINE, format("Sending quote of the day to %s failed:", subscriber.getSenderId()), e);
+            failed.incrementAndGet();
+        }
+    }
+
+    private long pace(long slot) {
+        long delay = slot - System.nanoTime();
+        if (delay > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            return slot + intervalNanos;
+        }
+        // Behind schedule; don't burst to catch up.
+        return System.nanoTime() + intervalNanos;
+    }
+
+    /**
+     * Outcome of a single broadcast run.
+     */
+    public static class Report {
+
+        private final Checkpoint checkpoint;
+        private final long sent;
+        private final long failed;
+        private final long elapsedMillis;
+
+        Report(Checkpoint checkpoint, long sent, long failed, long elapsedMillis) {
+            this.checkpoint = checkpoint;
+            this.sent = sent;
+            this.failed = failed;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public Checkpoint getCheckpoint() {
+            return checkpoint;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * Returns the delivery throughput of this run in messages per second.
+         */
+        public double getThroughput() {
+            return elapsedMillis > 0 ? (sent + failed) * 1000.0 / elapsedMillis : 0;
+        }
+
+        @Override
+        public String toString() {
+            return format("Broadcast %s: sent %d, failed %d in %d millis (%.1f messages/s); total sent %d, failed %d, %s",
+                    checkpoint.getBroadcastId(), sent, failed, elapsedMillis, getThroughput(),
+                    checkpoint.getSent(), checkpoint.getFailed(), checkpoint.isDone() ? "done" : "not done");
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.broadcast;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A user subscribed to the quote of the day, with the page the user subscribed through.
+ *
+ * @author Marcel Overdijk
+ */
+public final class Subscriber {
+
+    private final String senderId;
+    private final String pageId;
+
+    public Subscriber(final String senderId, final String pageId) {
+        this.senderId = requireNonNull(senderId, "'senderId' must not be null");
+        this.pageId = pageId;
+    }
+
+    public String getSenderId() {
+        return senderId;
+    }
+
+    /**
+     * Returns the page id, or {@code null} if unknown (the default page).
+     */
+    public String getPageId() {
+        return pageId;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.broadcast;
+
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A page of subscribers read from a {@link SubscriberStore}.
+ *
+ * @author Marcel Overdijk
+ */
+public final class SubscriberPage {
+
+    private final List<Subscriber> subscribers;
+    private final String cursor;
+
+    public SubscriberPage(final List<Subscriber> subscribers, final String cursor) {
+        this.subscribers = requireNonNull(subscribers, "'subscribers' must not be null");
+        this.cursor = cursor;
+    }
+
+    public List<Subscriber> getSubscribers() {
+        return subscribers;
+    }
+
+    /**
+     * Returns the cursor of the next page, or {@code null} if this is the last page.
+     */
+    public String getCursor() {
+        return cursor;
+    }
+}
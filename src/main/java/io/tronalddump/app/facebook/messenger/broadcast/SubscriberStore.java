@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.broadcast;
+
+/**
+ * Store of quote of the day {@link Subscriber subscribers} and {@link Checkpoint broadcast checkpoints}.
+ *
+ * @author Marcel Overdijk
+ */
+public interface SubscriberStore {
+
+    /**
+     * Subscribes the given subscriber.
+     *
+     * @return {@code false} if already subscribed
+     */
+    boolean subscribe(Subscriber subscriber);
+
+    /**
+     * Unsubscribes the given sender.
+     *
+     * @return {@code false} if not subscribed
+     */
+    boolean unsubscribe(String senderId);
+
+    /**
+     * Returns a page of at most {@code limit} subscribers starting at the given cursor ({@code null} for the first
+     * page).
+     */
+    SubscriberPage getSubscribers(String cursor, int limit);
+
+    /**
+     * Returns the checkpoint of the given broadcast, leased to the caller for {@code leaseMillis}, or {@code null}
+     * if another broadcast run holds the lease. A new checkpoint is created for a new broadcast.
+     */
+    Checkpoint acquireCheckpoint(String broadcastId, long leaseMillis);
+
+    /**
+     * Saves the given checkpoint, extending the caller's lease by {@code leaseMillis}; a lease of {@code 0} releases
+     * it.
+     *
+     * @return {@code false} if another broadcast run has taken over the lease, in which case nothing is saved
+     */
+    boolean saveCheckpoint(Checkpoint checkpoint, long leaseMillis);
+}
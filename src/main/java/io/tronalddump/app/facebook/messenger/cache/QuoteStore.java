@@ -0,0 +1,280 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.cache;
+
+import io.tronalddump.client.Quote;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compact, deduplicated store of quotes.
+ * <p>
+ * Every distinct quote is stored once, however many search results or tag buckets refer to it. Quote ids and texts
+ * are stored as UTF-8 bytes in a single growing arena, tags are interned into an int dictionary and all per quote
+ * metadata is kept in one {@code int[]}, so a quote costs its UTF-8 bytes plus a few ints instead of a {@link Quote}
+ * with its {@code String}s and tag list. Quotes are identified by dense int handles and read through
+ * {@link QuoteView flyweight views} that decode on access.
+ * <p>
+ * Quotes are deduplicated on their id (or on their text when they have no id) using an open addressing table over
+ * the arena, so no {@code String} keys are retained. The store only grows; it is bounded by the size of the quote
+ * corpus rather than by the number of cached results.
+ *
+ * @author Marcel Overdijk
+ */
+public class QuoteStore {
+
+    // Layout of a quote's ints in the quotes array.
+    private static final int OFFSET = 0;
+    private static final int ID_LENGTH = 1;
+    private static final int VALUE_LENGTH = 2;
+    private static final int TAGS_OFFSET = 3;
+    private static final int TAGS_LENGTH = 4;
+    private static final int FIELDS = 5;
+
+    private static final int NO_ID = -1;
+
+    private final Map<String, Integer> tagIds = new HashMap<>();
+    private String[] tagNames = new String[16];
+    private int tagCount;
+
+    private byte[] arena = new byte[4096];
+    private int arenaSize;
+
+    private int[] quotes = new int[FIELDS * 64];
+    private int quoteCount;
+
+    private int[] tagRefs = new int[256];
+    private int tagRefCount;
+
+    // Open addressing table of quote handles + 1, 0 meaning empty.
+    private int[] table = new int[128];
+
+    /**
+     * Adds the given quote, unless an equal quote is already stored.
+     *
+     * @return the handle of the stored quote
+     */
+    public int add(Quote quote) {
+        requireNonNull(quote, "'quote' must not be null");
+        return add(quote.getQuoteId(), quote.getValue(), quote.getTags());
+    }
+
+    /**
+     * Adds the given quotes.
+     *
+     * @return the handles of the stored quotes, in order
+     */
+    public int[] addAll(List<Quote> quotes) {
+        int[] handles = new int[quotes.size()];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = add(quotes.get(i));
+        }
+        return handles;
+    }
+
+    /**
+     * Adds a quote with the given id (may be {@code null}), text and tags (may be {@code null}), unless an equal
+     * quote is already stored.
+     *
+     * @return the handle of the stored quote
+     */
+    public synchronized int add(String quoteId, String value, List<String> tags) {
+        requireNonNull(value, "'value' must not be null");
+        byte[] id = quoteId != null ? quoteId.getBytes(StandardCharsets.UTF_8) : null;
+        byte[] text = value.getBytes(StandardCharsets.UTF_8);
+        byte[] key = id != null ? id : text;
+        int hash = hash(key, 0, key.length);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int handle = table[slot] - 1;
+            if (handle < 0) {
+                break;
+            }
+            if (keyEquals(handle, id != null, key)) {
+                return handle;
+            }
+        }
+        int handle = quoteCount++;
+        quotes = ensureCapacity(quotes, quoteCount * FIELDS);
+        int base = handle * FIELDS;
+        quotes[base + OFFSET] = arenaSize;
+        quotes[base + ID_LENGTH] = id != null ? id.length : NO_ID;
+        quotes[base + VALUE_LENGTH] = text.length;
+        if (id != null) {
+            append(id);
+        }
+        append(text);
+        quotes[base + TAGS_OFFSET] = tagRefCount;
+        quotes[base + TAGS_LENGTH] = tags != null ? tags.size() : 0;
+        if (tags != null) {
+            tagRefs = ensureCapacity(tagRefs, tagRefCount + tags.size());
+            for (String tag : tags) {
+                tagRefs[tagRefCount++] = internTag(tag);
+            }
+        }
+        insert(handle, hash);
+        return handle;
+    }
+
+    public QuoteView get(int handle) {
+        if (handle < 0 || handle >= size()) {
+            throw new IndexOutOfBoundsException("Unknown quote handle: " + handle);
+        }
+        return new QuoteView(this, handle);
+    }
+
+    /**
+     * Returns a list of views of the given quote handles.
+     */
+    public List<QuoteView> getAll(int[] handles) {
+        return new AbstractList<QuoteView>() {
+
+            @Override
+            public QuoteView get(int index) {
+                return QuoteStore.this.get(handles[index]);
+            }
+
+            @Override
+            public int size() {
+                return handles.length;
+            }
+        };
+    }
+
+    public synchronized int size() {
+        return quoteCount;
+    }
+
+    /**
+     * Returns the number of bytes used by the arena holding the quote ids and texts.
+     */
+    public synchronized int getArenaSize() {
+        return arenaSize;
+    }
+
+    synchronized String getQuoteId(int handle) {
+        int base = handle * FIELDS;
+        int idLength = quotes[base + ID_LENGTH];
+        return idLength == NO_ID ? null : new String(arena, quotes[base + OFFSET], idLength, StandardCharsets.UTF_8);
+    }
+
+    synchronized String getValue(int handle) {
+        int base = handle * FIELDS;
+        int idLength = Math.max(0, quotes[base + ID_LENGTH]);
+        return new String(arena, quotes[base + OFFSET] + idLength, quotes[base + VALUE_LENGTH], StandardCharsets.UTF_8);
+    }
+
+    synchronized String[] getTags(int handle) {
+        int base = handle * FIELDS;
+        String[] tags = new String[quotes[base + TAGS_LENGTH]];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = tagNames[tagRefs[quotes[base + TAGS_OFFSET] + i]];
+        }
+        return tags;
+    }
+
+    private int internTag(String tag) {
+        Integer tagId = tagIds.get(tag);
+        if (tagId == null) {
+            tagId = tagCount++;
+            if (tagCount > tagNames.length) {
+                tagNames = Arrays.copyOf(tagNames, tagNames.length * 2);
+            }
+            tagNames[tagId] = tag;
+            tagIds.put(tag, tagId);
+        }
+        return tagId;
+    }
+
+    private void append(byte[] bytes) {
+        arena = ensureCapacity(arena, arenaSize + bytes.length);
+        System.arraycopy(bytes, 0, arena, arenaSize, bytes.length);
+        arenaSize += bytes.length;
+    }
+
+    private boolean keyEquals(int handle, boolean byId, byte[] key) {
+        int base = handle * FIELDS;
+        int idLength = quotes[base + ID_LENGTH];
+        int offset = quotes[base + OFFSET];
+        int length;
+        if (byId) {
+            length = idLength;
+        } else if (idLength == NO_ID) {
+            length = quotes[base + VALUE_LENGTH];
+        } else {
+            return false;
+        }
+        if (length != key.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (arena[offset + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void insert(int handle, int hash) {
+        // Keep the load factor below 0.5.
+        if (quoteCount * 2 > table.length) {
+            int[] old = table;
+            table = new int[old.length * 2];
+            for (int entry : old) {
+                if (entry != 0) {
+                    int base = (entry - 1) * FIELDS;
+                    int idLength = quotes[base + ID_LENGTH];
+                    int length = idLength != NO_ID ? idLength : quotes[base + VALUE_LENGTH];
+                    place(entry - 1, hash(arena, quotes[base + OFFSET], length));
+                }
+            }
+        }
+        place(handle, hash);
+    }
+
+    private void place(int handle, int hash) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = handle + 1;
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ bytes[i]) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static byte[] ensureCapacity(byte[] array, int capacity) {
+        return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.cache;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Flyweight view of a quote in a {@link QuoteStore}. Views are cheap to create; the quote's id, text and tags are
+ * decoded from the store on every access.
+ *
+ * @author Marcel Overdijk
+ */
+public final class QuoteView {
+
+    private final QuoteStore store;
+    private final int handle;
+
+    QuoteView(QuoteStore store, int handle) {
+        this.store = store;
+        this.handle = handle;
+    }
+
+    public int getHandle() {
+        return handle;
+    }
+
+    /**
+     * Returns the quote id, or {@code null} if the quote has none.
+     */
+    public String getQuoteId() {
+        return store.getQuoteId(handle);
+    }
+
+    public String getValue() {
+        return store.getValue(handle);
+    }
+
+    public List<String> getTags() {
+        return Arrays.asList(store.getTags(handle));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof QuoteView)) {
+            return false;
+        }
+        QuoteView other = (QuoteView) o;
+        return store == other.store && handle == other.handle;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(store) + handle;
+    }
+
+    @Override
+    public String toString() {
+        return "QuoteView{handle=" + handle + ", value='" + getValue() + "'}";
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.cache;
+
+import io.tronalddump.client.Quote;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bounded LRU cache of quote search results.
+ * <p>
+ * Results are kept as handles into a shared {@link QuoteStore}, so a quote found by many searches is stored once.
+ * Queries are matched ignoring case and surrounding whitespace, and results expire after {@code timeToLive} millis.
+ *
+ * @author Marcel Overdijk
+ */
+public class SearchCache {
+
+    private final QuoteStore store;
+    private final long timeToLive;
+    private final Map<String, Entry> results;
+
+    public SearchCache(final QuoteStore store, final int maxQueries, final long timeToLive) {
+        this.store = requireNonNull(store, "'store' must not be null");
+        this.timeToLive = timeToLive;
+        this.results = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxQueries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached results of the given query, or {@code null} if not cached or expired.
+     */
+    public List<QuoteView> get(String query) {
+        String key = normalize(query);
+        Entry entry;
+        synchronized (results) {
+            entry = results.get(key);
+            if (entry != null && entry.expires < System.currentTimeMillis()) {
+                results.remove(key);
+                entry = null;
+            }
+        }
+        return entry != null ? store.getAll(entry.handles) : null;
+    }
+
+    /**
+     * Caches the results of the given query.
+     *
+     * @return the cached results
+     */
+    public List<QuoteView> put(String query, List<Quote> quotes) {
+        int[] handles = quotes != null ? store.addAll(quotes) : new int[0];
+        synchronized (results) {
+            results.put(normalize(query), new Entry(handles, System.currentTimeMillis() + timeToLive));
+        }
+        return store.getAll(handles);
+    }
+
+    public QuoteStore getStore() {
+        return store;
+    }
+
+    private static String normalize(String query) {
+        return query.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static class Entry {
+
+        final int[] handles;
+        final long expires;
+
+        Entry(int[] handles, long expires) {
+            this.handles = handles;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.cache;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Short-lived server-side cursors over already fetched search results, so paging through results needs no upstream
+ * calls.
+ * <p>
+ * A cursor only holds the {@link QuoteStore} handles of its results. At most {@code maxCursors} cursors are kept
+ * (least recently used are dropped first) and cursors expire {@code timeToLive} millis after they were opened.
+ * Cursor ids are short lowercase base 36 strings, as they are sent around in (lowercased) payloads.
+ *
+ * @author Marcel Overdijk
+ */
+public class SearchCursors {
+
+    private final QuoteStore store;
+    private final long timeToLive;
+    private final Map<String, Cursor> cursors;
+
+    public SearchCursors(final QuoteStore store, final int maxCursors, final long timeToLive) {
+        this.store = requireNonNull(store, "'store' must not be null");
+        this.timeToLive = timeToLive;
+        this.cursors = new LinkedHashMap<String, Cursor>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cursor> eldest) {
+                return size() > maxCursors;
+            }
+        };
+    }
+
+    /**
+     * Opens a cursor over the given results.
+     *
+     * @return the cursor id
+     */
+    public String open(String query, List<QuoteView> quotes) {
+        int[] handles = new int[quotes.size()];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = quotes.get(i).getHandle();
+        }
+        Cursor cursor = new Cursor(query, handles, System.currentTimeMillis() + timeToLive);
+        synchronized (cursors) {
+            String id;
+            do {
+                id = Long.toString(ThreadLocalRandom.current().nextLong(36L * 36 * 36 * 36 * 36 * 36), 36);
+            } while (cursors.containsKey(id));
+            cursors.put(id, cursor);
+            return id;
+        }
+    }
+
+    /**
+     * Returns the query of the given cursor, or {@code null} if the cursor is unknown or expired.
+     */
+    public String getQuery(String id) {
+        Cursor cursor = find(id);
+        return cursor != null ? cursor.query : null;
+    }
+
+    /**
+     * Returns the results of the given cursor, or {@code null} if the cursor is unknown or expired.
+     */
+    public List<QuoteView> getResults(String id) {
+        Cursor cursor = find(id);
+        return cursor != null ? store.getAll(cursor.handles) : null;
+    }
+
+    private Cursor find(String id) {
+        synchronized (cursors) {
+            Cursor cursor = cursors.get(id);
+            if (cursor != null && cursor.expires < System.currentTimeMillis()) {
+                cursors.remove(id);
+                return null;
+            }
+            return cursor;
+        }
+    }
+
+    private static class Cursor {
+
+        final String query;
+        final int[] handles;
+        final long expires;
+
+        Cursor(String query, int[] handles, long expires) {
+            this.query = query;
+            this.handles = handles;
+            this.expires = expires;
+        }
+    }
+}
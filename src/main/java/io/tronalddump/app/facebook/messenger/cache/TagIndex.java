@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable index for resolving (misspelled) tags to the closest known tag.
+ * <p>
+ * Tags are normalized (lower case, single spaces) and indexed by all variants with up to {@value #MAX_DISTANCE}
+ * characters deleted (symmetric delete). A tag within edit distance {@code d} of a query shares a variant with at
+ * most {@code d} deletions on both sides, so a lookup only generates the variants of the query and verifies the
+ * few candidates found. Lookup time thus depends on the query length, not on the number of tags.
+ *
+ * @author Marcel Overdijk
+ */
+public class TagIndex {
+
+    private static final int MAX_DISTANCE = 2;
+
+    private final List<String> tags = new ArrayList<>();
+    private final List<String> normalizedTags = new ArrayList<>();
+    private final Map<String, Integer> exact = new HashMap<>();
+    private final Map<String, List<Integer>> variants = new HashMap<>();
+
+    public TagIndex(final List<String> tags) {
+        for (String tag : tags) {
+            String normalized = normalize(tag);
+            if (!exact.containsKey(normalized)) {
+                int index = this.tags.size();
+                this.tags.add(tag);
+                this.normalizedTags.add(normalized);
+                exact.put(normalized, index);
+                for (String variant : getVariants(normalized, MAX_DISTANCE)) {
+                    variants.computeIfAbsent(variant, key -> new ArrayList<>(1)).add(index);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the tag matching the given tag ignoring case and whitespace, or otherwise the closest tag within the
+     * maximum edit distance for its length, or {@code null} if there is none.
+     */
+    public String resolve(String tag) {
+        if (tag == null) {
+            return null;
+        }
+        String normalized = normalize(tag);
+        Integer match = exact.get(normalized);
+        if (match != null) {
+            return tags.get(match);
+        }
+        int maxDistance = getMaxDistance(normalized);
+        if (maxDistance == 0) {
+            return null;
+        }
+        int bestIndex = -1;
+        int bestDistance = maxDistance + 1;
+        Set<Integer> seen = new HashSet<>();
+        for (String variant : getVariants(normalized, maxDistance)) {
+            List<Integer> candidates = variants.get(variant);
+            if (candidates == null) {
+                continue;
+            }
+            for (int candidate : candidates) {
+                if (seen.add(candidate)) {
+                    int distance = distance(normalizedTags.get(candidate), normalized);
+                    if (distance < bestDistance || (distance == bestDistance && candidate < bestIndex)) {
+                        bestIndex = candidate;
+                        bestDistance = distance;
+                    }
+                }
+            }
+        }
+        return bestIndex != -1 ? tags.get(bestIndex) : null;
+    }
+
+    /**
+     * Returns the maximum edit distance for the given tag: short tags must match exactly, longer tags may contain a
+     * typo or two.
+     */
+    static int getMaxDistance(String normalized) {
+        int length = normalized.length();
+        if (length <= 3) {
+            return 0;
+        }
+        return length <= 7 ? 1 : MAX_DISTANCE;
+    }
+
+    static String normalize(String tag) {
+        return tag.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Returns the given string and all variants of it with up to {@code maxDeletes} characters deleted.
+     */
+    private static Set<String> getVariants(String str, int maxDeletes) {
+        Set<String> variants = new HashSet<>();
+        variants.add(str);
+        Set<String> previous = variants;
+        for (int deletes = 1; deletes <= maxDeletes; deletes++) {
+            Set<String> current = new HashSet<>();
+            for (String variant : previous) {
+                for (int i = 0; i < variant.length(); i++) {
+                    current.add(variant.substring(0, i) + variant.substring(i + 1));
+                }
+            }
+            variants.addAll(current);
+            previous = current;
+        }
+        return variants;
+    }
+
+    /**
+     * Returns the Levenshtein distance between the given strings.
+     */
+    static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] temp = previous;
+            previous = current;
+            current = temp;
+        }
+        return previous[b.length()];
+    }
+}
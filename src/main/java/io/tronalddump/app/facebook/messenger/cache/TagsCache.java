@@ -16,6 +16,7 @@
 
 package io.tronalddump.app.facebook.messenger.cache;
 
+import io.tronalddump.app.facebook.messenger.jfr.Events;
 import io.tronalddump.client.TronaldClient;
 import org.apache.commons.collections4.ListUtils;
 
@@ -28,6 +29,11 @@ import static java.util.Objects.requireNonNull;
 
 /**
  * The Tronald Dump IO Tags Cache.
+ * <p>
+ * The tag index is only rebuilt when a refresh returned different tags. With a {@link TagsFetcher} the tags are
+ * refreshed with conditional requests, and as long as the API answers with an {@code ETag} or {@code Last-Modified}
+ * header, an unchanged refresh costs a bodiless round trip and the tags are refreshed every conditional refresh
+ * interval instead.
  *
  * @author Marcel Overdijk
  */
@@ -36,9 +42,12 @@ public class TagsCache {
     private static final Logger logger = Logger.getLogger(TagsCache.class.getName());
 
     private final TronaldClient tronaldClient;
+    private final TagsFetcher tagsFetcher;
 
-    private List<String> tags;
+    private volatile List<String> tags;
+    private volatile TagIndex tagIndex;
     private long refreshInterval;
+    private long conditionalRefreshInterval;
     private long refreshTimestamp = 0;
 
     public TagsCache(final TronaldClient tronaldClient) {
@@ -46,8 +55,14 @@ public class TagsCache {
     }
 
     public TagsCache(final TronaldClient tronaldClient, long refreshInterval) {
+        this(tronaldClient, refreshInterval, null, refreshInterval);
+    }
+
+    public TagsCache(final TronaldClient tronaldClient, long refreshInterval, final TagsFetcher tagsFetcher, long conditionalRefreshInterval) {
         this.tronaldClient = requireNonNull(tronaldClient, "'tronaldClient' must not be null");
         this.refreshInterval = refreshInterval;
+        this.tagsFetcher = tagsFetcher;
+        this.conditionalRefreshInterval = conditionalRefreshInterval;
     }
 
     public List<String> getTags() {
@@ -61,8 +76,20 @@ public class TagsCache {
             synchronized (TagsCache.class) {
                 logger.info("Retrieving tags");
                 if (tags == null || refreshTimestamp < System.currentTimeMillis()) {
-                    tags = tronaldClient.getTags();
-                    refreshTimestamp = System.currentTimeMillis() + refreshInterval;
+                    try (Events.TagsRefreshScope jfrEvent = Events.tagsRefresh()) {
+                        List<String> newTags = tagsFetcher != null ? tagsFetcher.fetch() : tronaldClient.getTags();
+                        boolean modified = newTags != null && !newTags.equals(tags);
+                        if (modified) {
+                            tagIndex = new TagIndex(newTags);
+                            tags = newTags;
+                        } else {
+                            logger.info("Tags not modified");
+                        }
+                        boolean conditional = tagsFetcher != null && tagsFetcher.hasValidator();
+                        refreshTimestamp = System.currentTimeMillis() + (conditional ? conditionalRefreshInterval : refreshInterval);
+                        jfrEvent.modified(modified);
+                        jfrEvent.result(String.valueOf(tags != null ? tags.size() : 0));
+                    }
                 }
             }
         } else {
@@ -71,6 +98,13 @@ public class TagsCache {
         return tags;
     }
 
+    /**
+     * Returns whether the tags have been retrieved, without retrieving them.
+     */
+    public boolean isLoaded() {
+        return tags != null;
+    }
+
     public List<List<String>> getTagsPaged(int pageSize) {
         return ListUtils.partition(getTags(), pageSize);
     }
@@ -84,6 +118,18 @@ public class TagsCache {
         return false;
     }
 
+    /**
+     * Resolves the given tag to a known tag, ignoring case and allowing small spelling mistakes.
+     * E.g. {@code hilary clinton} is resolved to {@code Hillary Clinton}.
+     *
+     * @return the known tag, or {@code null} if no tag is close enough
+     */
+    public String resolveTag(String tag) {
+        getTags();
+        TagIndex tagIndex = this.tagIndex;
+        return tagIndex != null ? tagIndex.resolve(tag) : null;
+    }
+
     public String getTag(String tag) {
         for (String t : getTags()) {
             if (t.equalsIgnoreCase(tag)) {
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.cache;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.tronalddump.app.facebook.messenger.health.UpstreamMonitor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Fetches the tags from the Tronald Dump API with conditional requests.
+ * <p>
+ * The {@code ETag} and {@code Last-Modified} headers of the last response are sent back as {@code If-None-Match}
+ * and {@code If-Modified-Since}, so when the tags did not change the API answers {@code 304 Not Modified} without a
+ * body. The tags are read from {@code _embedded.tag}, either as strings or as objects with a {@code value}.
+ *
+ * @author Marcel Overdijk
+ */
+public class TagsFetcher {
+
+    private static final Logger logger = Logger.getLogger(TagsFetcher.class.getName());
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final URL url;
+    private final UpstreamMonitor upstreamMonitor;
+    private final int timeout;
+
+    private String etag;
+    private String lastModified;
+
+    public TagsFetcher(final String apiUrl, final UpstreamMonitor upstreamMonitor, final int timeout) {
+        requireNonNull(apiUrl, "'apiUrl' must not be null");
+        try {
+            this.url = new URL(apiUrl.replaceAll("/+$", "") + "/tag");
+        } catch (IOException e) {
+            throw new IllegalArgumentException(format("Invalid API url '%s'", apiUrl), e);
+        }
+        this.upstreamMonitor = requireNonNull(upstreamMonitor, "'upstreamMonitor' must not be null");
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the tags, or {@code null} if they did not change since the last fetch.
+     *
+     * @throws UncheckedIOException if the tags cannot be fetched
+     */
+    public synchronized List<String> fetch() {
+        return upstreamMonitor.call(() -> {
+            try {
+                return doFetch();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Returns whether the last response carried an {@code ETag} or {@code Last-Modified} header, so the next fetch
+     * is conditional.
+     */
+    public synchronized boolean hasValidator() {
+        return etag != null || lastModified != null;
+    }
+
+    private List<String> doFetch() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            connection.setRequestProperty("Accept", "application/hal+json");
+            if (etag != null) {
+                connection.setRequestProperty("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", lastModified);
+            }
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                logger.fine("Tags not modified");
+                return null;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException(format("Fetching tags from %s failed with status %d", url, status));
+            }
+            List<String> tags;
+            try (InputStream in = connection.getInputStream()) {
+                tags = parse(in);
+            }
+            etag = connection.getHeaderField("ETag");
+            lastModified = connection.getHeaderField("Last-Modified");
+            return tags;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private List<String> parse(InputStream in) throws IOException {
+        List<String> tags = new ArrayList<>();
+        try (JsonParser json = jsonFactory.createParser(in)) {
+            if (json.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected tags response");
+            }
+            while (json.nextToken() == JsonToken.FIELD_NAME) {
+                String field = json.getCurrentName();
+                json.nextToken();
+                if (!field.equals("_embedded")) {
+                    json.skipChildren();
+                    continue;
+                }
+                while (json.nextToken() == JsonToken.FIELD_NAME) {
+                    String embedded = json.getCurrentName();
+                    if (json.nextToken() != JsonToken.START_ARRAY || !embedded.equals("tag")) {
+                        json.skipChildren();
+                        continue;
+                    }
+                    JsonToken token;
+                    while ((token = json.nextToken()) != JsonToken.END_ARRAY) {
+                        if (token == JsonToken.VALUE_STRING) {
+                            tags.add(json.getText());
+                        } else if (token == JsonToken.START_OBJECT) {
+                            while (json.nextToken() == JsonToken.FIELD_NAME) {
+                                String name = json.getCurrentName();
+                                json.nextToken();
+                                if (name.equals("value")) {
+                                    tags.add(json.getText());
+                                } else {
+                                    json.skipChildren();
+                                }
+                            }
+                        } else {
+                            json.skipChildren();
+                        }
+                    }
+                }
+            }
+        }
+        return tags;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.callback;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Scope of a single webhook batch in which identical upstream calls are made only once.
+ * <p>
+ * The context is bound to the threads processing the batch, so e.g. macros can share results with other senders
+ * in the same batch without knowing about batching. Outside a batch calls are simply executed.
+ *
+ * @author Marcel Overdijk
+ */
+public class BatchContext {
+
+    private static final ThreadLocal<BatchContext> current = new ThreadLocal<>();
+
+    private final ConcurrentMap<String, FutureTask<?>> results = new ConcurrentHashMap<>();
+    private final Executor sendExecutor;
+
+    public BatchContext(final Executor sendExecutor) {
+        this.sendExecutor = requireNonNull(sendExecutor, "'sendExecutor' must not be null");
+    }
+
+    public static BatchContext current() {
+        return current.get();
+    }
+
+    /**
+     * Returns the {@link Executor} for Send API calls that may overlap with other work of the current batch, or an
+     * executor running on the calling thread outside a batch.
+     */
+    public static Executor sendExecutor() {
+        BatchContext context = current.get();
+        return context != null ? context.sendExecutor : Runnable::run;
+    }
+
+    /**
+     * Executes the given {@code task} while this context is bound to the current thread.
+     */
+    public void run(Runnable task) {
+        BatchContext previous = current.get();
+        current.set(this);
+        try {
+            task.run();
+        } finally {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Returns the result of the given {@code call}, executing it only once per {@code key} within the current batch.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T memoize(String key, Callable<T> call) {
+        BatchContext context = current.get();
+        if (context == null) {
+            try {
+                return call.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        FutureTask<T> task = new FutureTask<>(call);
+        FutureTask<T> existing = (FutureTask<T>) context.results.putIfAbsent(key, task);
+        if (existing == null) {
+            existing = task;
+            task.run();
+        }
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
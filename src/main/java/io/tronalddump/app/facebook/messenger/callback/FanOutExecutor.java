@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.callback;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.utils.SystemProperty;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a batch of independent tasks in parallel on a bounded number of threads and waits for all of them.
+ * <p>
+ * The calling thread always works through the batch itself; idle threads of a long-lived pool of at most
+ * {@code maxThreads} threads help it. The pool has no queue: when all its threads are busy the calling thread runs
+ * every task itself, so no task waits for a pool thread and a batch is never slower than running it in line. Send
+ * API calls that overlap other work run on a second pool of the same size, so a task waiting for a send never starves
+ * the sends; when that pool is busy the send is made in line. Idle threads are stopped after a minute.
+ * <p>
+ * On App Engine threads may not outlive the request that created them, so there helping request threads are created
+ * per batch and each overlapping send gets its own request thread.
+ *
+ * @author Marcel Overdijk
+ */
+public class FanOutExecutor {
+
+    private static final Logger logger = Logger.getLogger(FanOutExecutor.class.getName());
+
+    private final int maxThreads;
+    private final boolean requestThreads;
+    private final ThreadPoolExecutor taskExecutor;
+    private final ThreadPoolExecutor sendExecutor;
+
+    public FanOutExecutor(final int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("'maxThreads' must be greater than 0");
+        }
+        this.maxThreads = maxThreads;
+        this.requestThreads = SystemProperty.environment.value() != null;
+        this.taskExecutor = requestThreads ? null : newPool("fan-out", new ThreadPoolExecutor.AbortPolicy());
+        this.sendExecutor = requestThreads ? null : newPool("send", new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public void invokeAll(List<? extends Runnable> tasks) {
+        if (tasks.size() <= 1 || maxThreads == 1) {
+            tasks.forEach(this::run);
+            return;
+        }
+        Queue<Runnable> pending = new ConcurrentLinkedQueue<>(tasks);
+        CountDownLatch done = new CountDownLatch(tasks.size());
+        int helpers = Math.min(tasks.size() - 1, maxThreads);
+        ExecutorService executor = requestThreads ? newExecutor(helpers) : taskExecutor;
+        try {
+            try {
+                for (int i = 0; i < helpers; i++) {
+                    executor.execute(() -> drain(pending, done));
+                }
+            } catch (RejectedExecutionException e) {
+                // All pool threads are busy; the calling thread runs the remaining tasks.
+            }
+            drain(pending, done);
+            awaitUninterruptibly(done);
+        } finally {
+            if (requestThreads) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of pool threads currently running tasks of other requests, or {@code 0} on App Engine.
+     */
+    public int getActiveThreads() {
+        return taskExecutor != null ? taskExecutor.getActiveCount() : 0;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Returns the {@link Executor} for Send API calls that overlap with other work. Callers must wait for the calls
+     * to finish before their request ends.
+     */
+    public Executor getSendExecutor() {
+        if (requestThreads) {
+            ThreadFactory threadFactory = threadFactory();
+            return command -> threadFactory.newThread(command).start();
+        }
+        return sendExecutor;
+    }
+
+    /**
+     * Returns a new {@link ExecutorService} with the given number of threads. The caller is responsible for shutting
+     * it down.
+     */
+    public ExecutorService newExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, threadFactory());
+    }
+
+    private ThreadPoolExecutor newPool(String name, RejectedExecutionHandler rejectedExecutionHandler) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, rejectedExecutionHandler);
+    }
+
+    private void drain(Queue<Runnable> pending, CountDownLatch done) {
+        Runnable task;
+        while ((task = pending.poll()) != null) {
+            try {
+                run(task);
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Task failed:", e);
+        }
+    }
+
+    protected ThreadFactory threadFactory() {
+        if (requestThreads) {
+            return ThreadManager.currentRequestThreadFactory();
+        }
+        return Executors.defaultThreadFactory();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.callback;
+
+import com.restfb.types.webhook.messaging.MessageItem;
+import com.restfb.types.webhook.messaging.MessagingItem;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A single incoming message, quick reply or postback, reduced to the fields the {@link TronaldDumpCallbackHandler}
+ * needs.
+ *
+ * @author Marcel Overdijk
+ */
+public final class MessagingEvent {
+
+    /**
+     * The event type. Recorded by ordinal, so new types must be added last.
+     */
+    public enum Type {
+        MESSAGE,
+        POSTBACK,
+        /**
+         * A tapped quick reply; its payload is set by the bot, not typed by the user.
+         */
+        QUICK_REPLY
+    }
+
+    private static final ThreadLocal<MessagingEvent> current = new ThreadLocal<>();
+
+    private final String pageId;
+    private final String senderId;
+    private final Type type;
+    private final String payload;
+
+    public MessagingEvent(final String pageId, final String senderId, final Type type, final String payload) {
+        this.pageId = pageId;
+        this.senderId = requireNonNull(senderId, "'senderId' must not be null");
+        this.type = requireNonNull(type, "'type' must not be null");
+        this.payload = payload;
+    }
+
+    /**
+     * Creates an event from the given {@link MessagingItem}, or returns {@code null} if the item is neither a
+     * (non echo) message nor a postback.
+     */
+    public static MessagingEvent of(String pageId, MessagingItem messaging) {
+        if (messaging.getSender() == null) {
+            return null;
+        }
+        String senderId = messaging.getSender().getId();
+        MessageItem message = messaging.getMessage();
+        if (message != null && !message.isEcho()) {
+            if (message.getQuickReply() != null) {
+                return new MessagingEvent(pageId, senderId, Type.QUICK_REPLY, message.getQuickReply().getPayload());
+            }
+            return new MessagingEvent(pageId, senderId, Type.MESSAGE, message.getText());
+        }
+        if (messaging.getPostback() != null) {
+            return new MessagingEvent(pageId, senderId, Type.POSTBACK, messaging.getPostback().getPayload());
+        }
+        return null;
+    }
+
+    /**
+     * Returns the event being handled on the current thread, or {@code null}.
+     */
+    public static MessagingEvent current() {
+        return current.get();
+    }
+
+    /**
+     * Executes the given {@code task} with this event as the {@link #current()} event.
+     */
+    void run(Runnable task) {
+        MessagingEvent previous = current.get();
+        current.set(this);
+        try {
+            task.run();
+        } finally {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+        }
+    }
+
+    public String getPageId() {
+        return pageId;
+    }
+
+    public String getSenderId() {
+        return senderId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the message text, quick reply payload or postback payload.
+     */
+    public String getPayload() {
+        return payload;
+    }
+
+    @Override
+    public String toString() {
+        return format("%s from %s: %s", type, senderId, payload);
+    }
+}
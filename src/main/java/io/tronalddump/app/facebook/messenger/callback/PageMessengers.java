@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.callback;
+
+import com.github.marsbits.restfbmessenger.Messenger;
+import com.restfb.FacebookClient;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Routes events to the {@link Messenger} of the Facebook page they were sent to, so one deployment can serve many
+ * pages of the same Facebook app while sharing the brain and caches.
+ * <p>
+ * Events of pages without their own messenger (or without a page id) are sent with the default messenger.
+ * <p>
+ * Each page may also have a Graph API client with the same access token, used to post {@link Reply#render() rendered}
+ * replies; without clients all replies are sent with the messengers.
+ *
+ * @author Marcel Overdijk
+ */
+public class PageMessengers {
+
+    private final Messenger defaultMessenger;
+    private final Map<String, Messenger> messengers;
+    private final FacebookClient defaultClient;
+    private final Map<String, FacebookClient> clients;
+
+    public PageMessengers(final Messenger defaultMessenger) {
+        this(defaultMessenger, Collections.emptyMap());
+    }
+
+    public PageMessengers(final Messenger defaultMessenger, final Map<String, Messenger> messengers) {
+        this(defaultMessenger, messengers, null, Collections.emptyMap());
+    }
+
+    /**
+     * @param defaultMessenger the messenger of the default page
+     * @param messengers the messengers of other pages by page id
+     * @param defaultClient the Graph API client of the default page, or {@code null}
+     * @param clients the Graph API clients of other pages by page id
+     */
+    public PageMessengers(final Messenger defaultMessenger, final Map<String, Messenger> messengers, final FacebookClient defaultClient, final Map<String, FacebookClient> clients) {
+        this.defaultMessenger = requireNonNull(defaultMessenger, "'defaultMessenger' must not be null");
+        this.messengers = Collections.unmodifiableMap(new HashMap<>(requireNonNull(messengers, "'messengers' must not be null")));
+        this.defaultClient = defaultClient;
+        this.clients = Collections.unmodifiableMap(new HashMap<>(requireNonNull(clients, "'clients' must not be null")));
+    }
+
+    /**
+     * Returns the messenger for the given page id.
+     */
+    public Messenger get(String pageId) {
+        if (pageId != null) {
+            Messenger messenger = messengers.get(pageId);
+            if (messenger != null) {
+                return messenger;
+            }
+        }
+        return defaultMessenger;
+    }
+
+    /**
+     * Returns the Graph API client for the given page id, or {@code null} if there is none.
+     */
+    public FacebookClient getClient(String pageId) {
+        if (pageId != null) {
+            FacebookClient client = clients.get(pageId);
+            if (client != null) {
+                return client;
+            }
+        }
+        return defaultClient;
+    }
+
+    public Messenger getDefault() {
+        return defaultMessenger;
+    }
+
+    public Set<String> getPageIds() {
+        return messengers.keySet();
+    }
+}
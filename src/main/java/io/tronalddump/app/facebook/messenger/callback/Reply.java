@@ -0,0 +1,279 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.callback;
+
+import com.github.marsbits.restfbmessenger.send.SendOperations;
+import com.restfb.DefaultJsonMapper;
+import com.restfb.FacebookClient;
+import com.restfb.JsonMapper;
+import com.restfb.Parameter;
+import com.restfb.types.send.ButtonTemplatePayload;
+import com.restfb.types.send.IdMessageRecipient;
+import com.restfb.types.send.Message;
+import com.restfb.types.send.PostbackButton;
+import com.restfb.types.send.QuickReply;
+import com.restfb.types.send.SendResponse;
+import com.restfb.types.send.TemplateAttachment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A RiveScript reply converted to the Send API objects needed to send it to a recipient.
+ * <p>
+ * Replies may end with {@code QUICK_REPLIES: title=payload, ..} or {@code BUTTONS: title=payload, ..}; all other
+ * replies are sent as plain text. Converted replies are immutable and can be sent to many recipients.
+ * <p>
+ * Replies sent to many recipients can be {@link #render() rendered} once; a rendered reply posts its message JSON
+ * as is with the page's Graph API client instead of having the send operations serialize it again for each send.
+ *
+ * @author Marcel Overdijk
+ */
+public abstract class Reply {
+
+    private static final Pattern QUICK_REPLIES_PATTERN = Pattern.compile("(.*)QUICK_REPLIES:(.+)", Pattern.DOTALL);
+    private static final Pattern BUTTONS_PATTERN = Pattern.compile("(.*)BUTTONS:(.+)", Pattern.DOTALL);
+    private static final JsonMapper JSON_MAPPER = new DefaultJsonMapper();
+
+    /**
+     * Converts the given RiveScript reply.
+     */
+    public static Reply of(String reply) {
+        // If the reply contains QUICK_REPLIES send them to the user.
+        if (reply.contains("QUICK_REPLIES:")) {
+            Matcher m = QUICK_REPLIES_PATTERN.matcher(reply);
+            if (m.find()) {
+                String text = m.group(1);
+                List<QuickReply> quickReplies = new ArrayList<>();
+                for (Map.Entry<String, String> entry : getPayloadMappings(m.group(2)).entrySet()) {
+                    quickReplies.add(new QuickReply(entry.getKey(), entry.getValue()));
+                }
+                return new QuickRepliesReply(text, Collections.unmodifiableList(quickReplies));
+            }
+            return NONE;
+            // If the reply contains BUTTONS send them to the user.
+        } else if (reply.contains("BUTTONS:")) {
+            Matcher m = BUTTONS_PATTERN.matcher(reply);
+            if (m.find()) {
+                ButtonTemplatePayload buttonTemplate = new ButtonTemplatePayload(m.group(1));
+                for (Map.Entry<String, String> entry : getPayloadMappings(m.group(2)).entrySet()) {
+                    buttonTemplate.addButton(new PostbackButton(entry.getKey(), entry.getValue()));
+                }
+                return new ButtonTemplateReply(buttonTemplate);
+            }
+            return NONE;
+            // Otherwise simple send back the reply to the user.
+        } else {
+            return new TextReply(reply);
+        }
+    }
+
+    /**
+     * Returns whether this reply carries quick replies or buttons, and is thus worth caching.
+     */
+    public abstract boolean isStructured();
+
+    /**
+     * Returns the type of this reply, e.g. {@code text} or {@code quick_replies}.
+     */
+    public abstract String getType();
+
+    public abstract void send(SendOperations send, IdMessageRecipient recipient);
+
+    /**
+     * Sends this reply with the given Graph API client if this reply is {@link #render() rendered} and the client is
+     * not {@code null}, otherwise with the given send operations.
+     */
+    public void send(SendOperations send, FacebookClient client, IdMessageRecipient recipient) {
+        send(send, recipient);
+    }
+
+    /**
+     * Returns this reply with its Send API message rendered to JSON, or this reply itself if it has no
+     * {@link #isStructured() structure} worth rendering.
+     */
+    public Reply render() {
+        return this;
+    }
+
+    /**
+     * Converts a {@link String} with payload mappings ({@code title=payload, title=payload, ..}) to a {@link Map<String, String>}.
+     * E.g. {@code Random Quote=RANDOM_QUOTE, Tags=TAGS} is converted to map like
+     * {@code ["Random Quote": "RANDOM_QUOTE", "Tags": "TAGS"]}.
+     */
+    private static Map<String, String> getPayloadMappings(String str) {
+        LinkedHashMap<String, String> payloads = new LinkedHashMap<>();
+        String[] mappings = str.split(",");
+        for (String mapping : mappings) {
+            String[] temp = mapping.split("=", 2);
+            String title = temp[0].trim();
+            String payload = temp[1].trim();
+            payloads.put(title, payload);
+        }
+        return payloads;
+    }
+
+    private static final Reply NONE = new Reply() {
+
+        @Override
+        public boolean isStructured() {
+            return false;
+        }
+
+        @Override
+        public String getType() {
+            return "none";
+        }
+
+        @Override
+        public void send(SendOperations send, IdMessageRecipient recipient) {
+        }
+    };
+
+    private static class TextReply extends Reply {
+
+        private final String text;
+
+        TextReply(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean isStructured() {
+            return false;
+        }
+
+        @Override
+        public String getType() {
+            return "text";
+        }
+
+        @Override
+        public void send(SendOperations send, IdMessageRecipient recipient) {
+            send.textMessage(recipient, text);
+        }
+    }
+
+    private static class QuickRepliesReply extends Reply {
+
+        private final String text;
+        private final List<QuickReply> quickReplies;
+
+        QuickRepliesReply(String text, List<QuickReply> quickReplies) {
+            this.text = text;
+            this.quickReplies = quickReplies;
+        }
+
+        @Override
+        public boolean isStructured() {
+            return true;
+        }
+
+        @Override
+        public String getType() {
+            return "quick_replies";
+        }
+
+        @Override
+        public void send(SendOperations send, IdMessageRecipient recipient) {
+            send.quickReplies(recipient, text, quickReplies);
+        }
+
+        @Override
+        public Reply render() {
+            Message message = new Message(text);
+            message.addQuickReplies(quickReplies);
+            return new RenderedReply(this, JSON_MAPPER.toJson(message, true));
+        }
+    }
+
+    private static class ButtonTemplateReply extends Reply {
+
+        private final ButtonTemplatePayload buttonTemplate;
+
+        ButtonTemplateReply(ButtonTemplatePayload buttonTemplate) {
+            this.buttonTemplate = buttonTemplate;
+        }
+
+        @Override
+        public boolean isStructured() {
+            return true;
+        }
+
+        @Override
+        public String getType() {
+            return "buttons";
+        }
+
+        @Override
+        public void send(SendOperations send, IdMessageRecipient recipient) {
+            send.buttonTemplate(recipient, buttonTemplate);
+        }
+
+        @Override
+        public Reply render() {
+            return new RenderedReply(this, JSON_MAPPER.toJson(new Message(new TemplateAttachment(buttonTemplate)), true));
+        }
+    }
+
+    private static class RenderedReply extends Reply {
+
+        private final Reply reply;
+        private final String message;
+
+        RenderedReply(Reply reply, String message) {
+            this.reply = reply;
+            this.message = message;
+        }
+
+        @Override
+        public boolean isStructured() {
+            return true;
+        }
+
+        @Override
+        public String getType() {
+            return reply.getType();
+        }
+
+        @Override
+        public void send(SendOperations send, IdMessageRecipient recipient) {
+            reply.send(send, recipient);
+        }
+
+        @Override
+        public void send(SendOperations send, FacebookClient client, IdMessageRecipient recipient) {
+            if (client == null) {
+                reply.send(send, recipient);
+                return;
+            }
+            client.publish("me/messages", SendResponse.class,
+                    Parameter.with("recipient", recipient),
+                    Parameter.with("message", message));
+        }
+
+        @Override
+        public Reply render() {
+            return this;
+        }
+    }
+}
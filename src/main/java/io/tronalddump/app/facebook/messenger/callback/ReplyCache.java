@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.callback;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of {@link Reply#render() rendered} {@link Reply replies} to the {@link #isMenu menu} postbacks.
+ * <p>
+ * The greeting, help text and tag pages are the same for every user, so they are converted and rendered to JSON once
+ * and then only posted to each recipient. Replies to other triggers are not cached as they are mostly unique quotes
+ * and search pages.
+ *
+ * @author Marcel Overdijk
+ */
+public class ReplyCache {
+
+    private final Map<String, Reply> replies;
+
+    public ReplyCache(final int maxSize) {
+        this.replies = new LinkedHashMap<String, Reply>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Reply> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns whether the given payload is a menu postback, whose reply is the same for every user.
+     */
+    public static boolean isMenu(String payload) {
+        return payload != null && (payload.equals("GET_STARTED") || payload.equals("HELP") || payload.equals("TAGS") || payload.startsWith("TAGS_MORE_"));
+    }
+
+    /**
+     * Returns the given reply to the given trigger converted, or rendered and from this cache if the trigger is a menu
+     * postback.
+     */
+    public Reply get(String trigger, String reply) {
+        if (!isMenu(trigger)) {
+            return Reply.of(reply);
+        }
+        synchronized (replies) {
+            Reply cached = replies.get(reply);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Reply converted = Reply.of(reply);
+        if (converted.isStructured()) {
+            converted = converted.render();
+            synchronized (replies) {
+                replies.put(reply, converted);
+            }
+        }
+        return converted;
+    }
+}
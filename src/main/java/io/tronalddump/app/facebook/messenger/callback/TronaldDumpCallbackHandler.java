@@ -18,23 +18,28 @@ package io.tronalddump.app.facebook.messenger.callback;
 
 import com.github.marsbits.restfbmessenger.Messenger;
 import com.github.marsbits.restfbmessenger.webhook.AbstractCallbackHandler;
-import com.restfb.types.send.ButtonTemplatePayload;
+import com.restfb.FacebookClient;
 import com.restfb.types.send.IdMessageRecipient;
-import com.restfb.types.send.PostbackButton;
-import com.restfb.types.send.QuickReply;
-import com.restfb.types.webhook.messaging.MessageItem;
+import com.restfb.types.webhook.WebhookEntry;
+import com.restfb.types.webhook.WebhookObject;
 import com.restfb.types.webhook.messaging.MessagingItem;
-import com.restfb.types.webhook.messaging.PostbackItem;
-import com.rivescript.RiveScript;
+import io.tronalddump.app.facebook.messenger.jfr.Events;
+import io.tronalddump.app.facebook.messenger.limit.ConcurrencyLimiter;
+import io.tronalddump.app.facebook.messenger.limit.SenderRateLimiter;
+import io.tronalddump.app.facebook.messenger.rivescript.Brain;
+import io.tronalddump.app.facebook.messenger.trace.Span;
+import io.tronalddump.app.facebook.messenger.trace.Tracer;
 import io.tronalddump.client.TronaldClient;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static java.lang.String.format;
@@ -49,98 +54,192 @@ public class TronaldDumpCallbackHandler extends AbstractCallbackHandler {
 
     private static final Logger logger = Logger.getLogger(TronaldDumpCallbackHandler.class.getName());
 
+    private static final String THROTTLED_REPLY = "Slow down! Even I need a moment between tweets. Try again in a minute.";
+    private static final String OVERLOADED_REPLY = "I'm answering way too many people right now, believe me. Ask me again in a minute!";
+    private static final Pattern PAYLOAD_TYPE_PATTERN = Pattern.compile("[A-Z_]{1,32}");
+
     private final TronaldClient tronaldClient;
-    private final RiveScript bot;
+    private final Brain brain;
+    private final FanOutExecutor executor;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final SenderRateLimiter senderRateLimiter;
+    private final ReplyCache replyCache = new ReplyCache(64);
 
-    public TronaldDumpCallbackHandler(final TronaldClient tronaldClient, final RiveScript bot) {
+    public TronaldDumpCallbackHandler(final TronaldClient tronaldClient, final Brain brain, final FanOutExecutor executor, final ConcurrencyLimiter concurrencyLimiter, final SenderRateLimiter senderRateLimiter) {
         this.tronaldClient = requireNonNull(tronaldClient, "'tronaldClient' must not be null");
-        this.bot = requireNonNull(bot, "'bot' must not be null");
+        this.brain = requireNonNull(brain, "'brain' must not be null");
+        this.executor = requireNonNull(executor, "'executor' must not be null");
+        this.concurrencyLimiter = requireNonNull(concurrencyLimiter, "'concurrencyLimiter' must not be null");
+        this.senderRateLimiter = requireNonNull(senderRateLimiter, "'senderRateLimiter' must not be null");
+    }
+
+    @Override
+    public void onCallback(Messenger messenger, WebhookObject webhookObject) {
+        List<MessagingEvent> events = new ArrayList<>();
+        if (webhookObject.getEntryList() != null) {
+            for (WebhookEntry entry : webhookObject.getEntryList()) {
+                if (entry.getMessaging() == null) {
+                    continue;
+                }
+                for (MessagingItem messaging : entry.getMessaging()) {
+                    MessagingEvent event = MessagingEvent.of(entry.getId(), messaging);
+                    if (event != null) {
+                        events.add(event);
+                    }
+                }
+            }
+        }
+        onEvents(messenger, events);
     }
 
     @Override
     public void onMessage(Messenger messenger, MessagingItem messaging) {
-        String senderId = messaging.getSender().getId();
-        IdMessageRecipient recipient = new IdMessageRecipient(senderId);
-        MessageItem message = messaging.getMessage();
-        logger.info(format("Message received from %s: %s", senderId, message));
-        messenger.send().markSeen(recipient);
-        sendReply(messenger, senderId, message.getQuickReply() != null ? message.getQuickReply().getPayload() : message.getText());
+        onEvents(messenger, Collections.singletonList(MessagingEvent.of(null, messaging)));
     }
 
     @Override
     public void onPostback(Messenger messenger, MessagingItem messaging) {
-        String senderId = messaging.getSender().getId();
-        IdMessageRecipient recipient = new IdMessageRecipient(senderId);
-        PostbackItem postback = messaging.getPostback();
-        logger.info(format("Postback received from %s: %s", senderId, postback));
-        messenger.send().markSeen(recipient);
-        sendReply(messenger, senderId, postback.getPayload());
+        onEvents(messenger, Collections.singletonList(MessagingEvent.of(null, messaging)));
+    }
+
+    /**
+     * Handles a batch of events, sending all replies with the given {@link Messenger}.
+     */
+    public void onEvents(Messenger messenger, List<MessagingEvent> events) {
+        onEvents(new PageMessengers(messenger), events);
+    }
+
+    /**
+     * Handles a batch of events. Events are grouped by sender; the events of a single sender are handled in order,
+     * while different senders are handled in parallel. Identical searches within the batch are made once.
+     * Replies are sent with the messenger of the page each event was sent to.
+     */
+    public void onEvents(PageMessengers messengers, List<MessagingEvent> events) {
+        Map<String, List<MessagingEvent>> eventsBySender = new LinkedHashMap<>();
+        for (MessagingEvent event : events) {
+            eventsBySender.computeIfAbsent(event.getSenderId(), senderId -> new ArrayList<>()).add(event);
+        }
+        BatchContext batchContext = new BatchContext(executor.getSendExecutor());
+        List<Runnable> tasks = new ArrayList<>(eventsBySender.size());
+        for (List<MessagingEvent> senderEvents : eventsBySender.values()) {
+            tasks.add(Tracer.wrap(() -> batchContext.run(() -> senderEvents.forEach(event -> handle(messengers.get(event.getPageId()), messengers.getClient(event.getPageId()), event)))));
+        }
+        executor.invokeAll(tasks);
     }
 
-    private void sendReply(Messenger messenger, String senderId, String message) {
+    private void handle(Messenger messenger, FacebookClient client, MessagingEvent event) {
+        try (Span span = Tracer.startSpan("handle " + event.getType().name().toLowerCase())) {
+            if (span.isSampled()) {
+                span.tag("page.id", event.getPageId()).tag("sender.id", Tracer.pseudonymize(event.getSenderId()));
+            }
+            event.run(() -> doHandle(messenger, client, event));
+        }
+    }
+
+    private void doHandle(Messenger messenger, FacebookClient client, MessagingEvent event) {
+        String senderId = event.getSenderId();
         IdMessageRecipient recipient = new IdMessageRecipient(senderId);
-        messenger.send().typingOn(recipient);
+        logger.info(format("%s received from %s: %s", event.getType() == MessagingEvent.Type.POSTBACK ? "Postback" : "Message", senderId, event.getPayload()));
+        SenderRateLimiter.Result rateLimit = senderRateLimiter.tryAcquire(senderId);
+        if (rateLimit != SenderRateLimiter.Result.ALLOWED) {
+            logger.warning(format("Sender %s is throttled", senderId));
+            if (rateLimit == SenderRateLimiter.Result.THROTTLED) {
+                send("textMessage", () -> messenger.send().textMessage(recipient, THROTTLED_REPLY));
+            }
+            return;
+        }
+        ConcurrencyLimiter.Permit permit = concurrencyLimiter.tryAcquire(getPriority(event));
+        if (permit == null) {
+            logger.warning(format("Concurrency limit of %d reached, shedding %s", concurrencyLimiter.getLimit(), event));
+            send("textMessage", () -> messenger.send().textMessage(recipient, OVERLOADED_REPLY));
+            return;
+        }
+        // Mark seen and typing on are sent while the reply is being retrieved, but always before the reply itself.
+        CompletableFuture<Void> typing = CompletableFuture.runAsync(Tracer.wrap(() -> {
+            send("markSeen", () -> messenger.send().markSeen(recipient));
+            send("typingOn", () -> messenger.send().typingOn(recipient));
+        }), BatchContext.sendExecutor());
         try {
             // Get a reply from the RiveScript engine.
-            String reply = bot.reply(senderId, message);
-            logger.info("Got reply: " + reply);
-            // If the reply contains QUICK_REPLIES send them to the user.
-            if (reply.contains("QUICK_REPLIES:")) {
-                Pattern p = Pattern.compile("(.*)QUICK_REPLIES:(.+)", Pattern.DOTALL);
-                Matcher m = p.matcher(reply);
-                if (m.find()) {
-                    String text = m.group(1);
-                    List<QuickReply> quickReplies = new ArrayList<>();
-                    Map<String, String> payloads = getPayloadMappings(m.group(2));
-                    for (Map.Entry<String, String> entry : payloads.entrySet()) {
-                        String title = entry.getKey();
-                        String payload = entry.getValue();
-                        QuickReply quickReply = new QuickReply(title, payload);
-                        quickReplies.add(quickReply);
-                    }
-                    messenger.send().quickReplies(recipient, text, quickReplies);
-                }
-                // If the reply contains BUTTONS send them to the user.
-            } else if (reply.contains("BUTTONS:")) {
-                Pattern p = Pattern.compile("(.*)BUTTONS:(.+)", Pattern.DOTALL);
-                Matcher m = p.matcher(reply);
-                if (m.find()) {
-                    String text = m.group(1);
-                    ButtonTemplatePayload buttonTemplate = new ButtonTemplatePayload(text);
-                    Map<String, String> payloads = getPayloadMappings(m.group(2));
-                    for (Map.Entry<String, String> entry : payloads.entrySet()) {
-                        String title = entry.getKey();
-                        String postbackPayload = entry.getValue();
-                        PostbackButton button = new PostbackButton(title, postbackPayload);
-                        buttonTemplate.addButton(button);
-                    }
-                    messenger.send().buttonTemplate(recipient, buttonTemplate);
-                }
-                // Otherwise simple send back the reply to the user.
-            } else {
-                messenger.send().textMessage(recipient, reply);
+            String reply;
+            try (Span span = Tracer.startSpan("bot.reply")) {
+                reply = brain.reply(senderId, event.getPayload());
             }
+            logger.info("Got reply: " + reply);
+            awaitQuietly(typing);
+            sendReply(messenger, client, recipient, event, reply);
+            permit.onSuccess();
         } catch (Exception e) {
+            permit.onFailure(e);
             logger.log(Level.SEVERE, "Something went wrong:", e);
-            messenger.send().textMessage(recipient, "Something went wrong. If it is your fault, and probably it is, Chuck Norris will find you and roundhouse kick your butt!");
+            awaitQuietly(typing);
+            send("textMessage", () -> messenger.send().textMessage(recipient, "Something went wrong. If it is your fault, and probably it is, Chuck Norris will find you and roundhouse kick your butt!"));
+        }
+        send("typingOff", () -> messenger.send().typingOff(recipient));
+    }
+
+    /**
+     * Returns the priority of the given event: static replies first, then single upstream calls, then free text.
+     */
+    private static ConcurrencyLimiter.Priority getPriority(MessagingEvent event) {
+        String payload = event.getPayload();
+        if (payload == null) {
+            return ConcurrencyLimiter.Priority.LOW;
+        }
+        if (ReplyCache.isMenu(payload)) {
+            return ConcurrencyLimiter.Priority.HIGH;
+        }
+        if (payload.equals("RANDOM_QUOTE") || payload.startsWith("RANDOM_QUOTE_WITH_TAG_")) {
+            return ConcurrencyLimiter.Priority.MEDIUM;
+        }
+        return ConcurrencyLimiter.Priority.LOW;
+    }
+
+    /**
+     * Returns the type of the payload of the given event without any user input: {@code text} for messages, or the
+     * postback or quick reply payload without its argument, e.g. {@code RANDOM_QUOTE_WITH_TAG}.
+     */
+    private static String getPayloadType(MessagingEvent event) {
+        String payload = event.getPayload();
+        if (event.getType() == MessagingEvent.Type.MESSAGE || payload == null) {
+            return "text";
+        }
+        for (String prefix : new String[]{"RANDOM_QUOTE_WITH_TAG_", "TAGS_MORE_", "SEARCH_MORE_"}) {
+            if (payload.startsWith(prefix)) {
+                return prefix.substring(0, prefix.length() - 1);
+            }
+        }
+        return PAYLOAD_TYPE_PATTERN.matcher(payload).matches() ? payload : "other";
+    }
+
+    private void awaitQuietly(CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            logger.log(Level.WARNING, "Sending sender action failed:", e.getCause());
+        }
+    }
+
+    private void sendReply(Messenger messenger, FacebookClient client, IdMessageRecipient recipient, MessagingEvent event, String reply) {
+        try (Events.Scope jfrEvent = Events.sendReply(getPayloadType(event))) {
+            Reply converted = replyCache.get(event.getPayload(), reply);
+            jfrEvent.result(converted.getType());
+            send("reply", () -> converted.send(messenger.send(), client, recipient));
         }
-        messenger.send().typingOff(recipient);
     }
 
     /**
-     * Converts a {@link String} with payload mappings ({@code title=payload, title=payload, ..}) to a {@link Map<String, String>}.
-     * E.g. {@code Random Quote=RANDOM_QUOTE, Tags=TAGS} is converted to map like
-     * {@code ["Random Quote": "RANDOM_QUOTE", "Tags": "TAGS"]}.
+     * Makes the given Send API call in a span of the current trace and a Send API JFR event.
      */
-    private Map<String, String> getPayloadMappings(String str) {
-        LinkedHashMap<String, String> payloads = new LinkedHashMap<>();
-        String[] mappings = str.split(",");
-        for (String mapping : mappings) {
-            String[] temp = mapping.split("=", 2);
-            String title = temp[0].trim();
-            String payload = temp[1].trim();
-            payloads.put(title, payload);
+    private static void send(String operation, Runnable call) {
+        try (Span span = Tracer.startSpan("send " + operation); Events.Scope jfrEvent = Events.sendApi(operation)) {
+            try {
+                call.run();
+                jfrEvent.result("ok");
+            } catch (RuntimeException e) {
+                jfrEvent.result(e.getClass().getSimpleName());
+                throw e;
+            }
         }
-        return payloads;
     }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.health;
+
+import io.tronalddump.client.Page;
+import io.tronalddump.client.Quote;
+import io.tronalddump.client.TronaldClient;
+
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link TronaldClient} recording the latency and errors of all its calls in an {@link UpstreamMonitor}.
+ *
+ * @author Marcel Overdijk
+ */
+public class MonitoredTronaldClient extends TronaldClient {
+
+    private final UpstreamMonitor monitor;
+
+    public MonitoredTronaldClient(final UpstreamMonitor monitor) {
+        this.monitor = requireNonNull(monitor, "'monitor' must not be null");
+    }
+
+    @Override
+    public Quote getRandomQuote() {
+        return monitor.call(super::getRandomQuote);
+    }
+
+    @Override
+    public Quote getRandomQuote(String tag) {
+        return monitor.call(() -> super.getRandomQuote(tag));
+    }
+
+    @Override
+    public Page<Quote> search(String query) {
+        return monitor.call(() -> super.search(query));
+    }
+
+    @Override
+    public List<String> getTags() {
+        return monitor.call(super::getTags);
+    }
+}
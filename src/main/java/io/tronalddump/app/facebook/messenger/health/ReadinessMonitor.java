@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.health;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.tronalddump.app.facebook.messenger.cache.QuoteStore;
+import io.tronalddump.app.facebook.messenger.cache.TagsCache;
+import io.tronalddump.app.facebook.messenger.callback.FanOutExecutor;
+import io.tronalddump.app.facebook.messenger.limit.ConcurrencyLimiter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decides whether this instance is ready for traffic, based on its saturation and its view of the Tronald Dump API.
+ * <p>
+ * The instance is not ready when:
+ * <ul>
+ * <li>the webhook requests in flight exceed {@code maxUtilization} of the {@link ConcurrencyLimiter}'s limit,</li>
+ * <li>the average Tronald Dump API latency exceeds {@code maxUpstreamLatency} millis (if greater than 0),</li>
+ * <li>the average Tronald Dump API error rate exceeds {@code maxUpstreamErrorRate} (if greater than 0),</li>
+ * <li>fewer than {@code minCachedQuotes} quotes are cached, or</li>
+ * <li>less than {@code minHeapFreeRatio} of the maximum heap was free after the last garbage collection.</li>
+ * </ul>
+ * The upstream signals are always reported, but only affect readiness when their threshold is set: an upstream
+ * outage hits every instance alike, so taking them all out of rotation would not help. For the same reason whether
+ * the tags are cached and how many {@link FanOutExecutor} threads are busy are only reported; the tags are loaded at
+ * startup and the fan-out pool has no queue, as request threads handle their own batch when it is busy. Probes only
+ * read state that
+ * is maintained incrementally by its owners; the snapshot combining it is recomputed at most once per
+ * {@code snapshotInterval} millis, by the first probe after it expired, and served as pre-rendered JSON.
+ *
+ * @author Marcel Overdijk
+ */
+public class ReadinessMonitor {
+
+    private static final Logger logger = Logger.getLogger(ReadinessMonitor.class.getName());
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final FanOutExecutor fanOutExecutor;
+    private final UpstreamMonitor upstreamMonitor;
+    private final TagsCache tagsCache;
+    private final QuoteStore quoteStore;
+    private final long snapshotIntervalNanos;
+    private final double maxUtilization;
+    private final long maxUpstreamLatency;
+    private final double maxUpstreamErrorRate;
+    private final int minCachedQuotes;
+    private final double minHeapFreeRatio;
+    private final AtomicBoolean computing = new AtomicBoolean();
+
+    private volatile Snapshot snapshot;
+
+    public ReadinessMonitor(final ConcurrencyLimiter concurrencyLimiter, final FanOutExecutor fanOutExecutor, final UpstreamMonitor upstreamMonitor, final TagsCache tagsCache, final QuoteStore quoteStore,
+                            final long snapshotInterval, final double maxUtilization, final long maxUpstreamLatency, final double maxUpstreamErrorRate, final int minCachedQuotes, final double minHeapFreeRatio) {
+        this.concurrencyLimiter = requireNonNull(concurrencyLimiter, "'concurrencyLimiter' must not be null");
+        this.fanOutExecutor = requireNonNull(fanOutExecutor, "'fanOutExecutor' must not be null");
+        this.upstreamMonitor = requireNonNull(upstreamMonitor, "'upstreamMonitor' must not be null");
+        this.tagsCache = requireNonNull(tagsCache, "'tagsCache' must not be null");
+        this.quoteStore = requireNonNull(quoteStore, "'quoteStore' must not be null");
+        this.snapshotIntervalNanos = TimeUnit.MILLISECONDS.toNanos(snapshotInterval);
+        this.maxUtilization = maxUtilization;
+        this.maxUpstreamLatency = maxUpstreamLatency;
+        this.maxUpstreamErrorRate = maxUpstreamErrorRate;
+        this.minCachedQuotes = minCachedQuotes;
+        this.minHeapFreeRatio = minHeapFreeRatio;
+    }
+
+    /**
+     * Returns the current snapshot, recomputing it if it expired. While one thread recomputes the snapshot, others
+     * get the previous one.
+     */
+    public Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current != null && System.nanoTime() - current.timestampNanos < snapshotIntervalNanos) {
+            return current;
+        }
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    snapshot = compute();
+                }
+                return snapshot;
+            }
+        }
+        if (computing.compareAndSet(false, true)) {
+            try {
+                snapshot = compute();
+            } finally {
+                computing.set(false);
+            }
+        }
+        return snapshot;
+    }
+
+    private Snapshot compute() {
+        List<String> reasons = new ArrayList<>();
+        int limit = concurrencyLimiter.getLimit();
+        int inFlight = concurrencyLimiter.getInFlight();
+        double utilization = limit > 0 ? (double) inFlight / limit : 1;
+        if (utilization > maxUtilization) {
+            reasons.add(format("%d of %d webhook requests in flight", inFlight, limit));
+        }
+        double latency = upstreamMonitor.getLatencyMillis();
+        if (maxUpstreamLatency > 0 && latency > maxUpstreamLatency) {
+            reasons.add(format("Tronald Dump API latency of %.0f millis", latency));
+        }
+        double errorRate = upstreamMonitor.getErrorRate();
+        if (maxUpstreamErrorRate > 0 && errorRate > maxUpstreamErrorRate) {
+            reasons.add(format("Tronald Dump API error rate of %.2f", errorRate));
+        }
+        boolean tagsCached = tagsCache.isLoaded();
+        int cachedQuotes = quoteStore.size();
+        if (cachedQuotes < minCachedQuotes) {
+            reasons.add(format("%d of %d quotes cached", cachedQuotes, minCachedQuotes));
+        }
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        long usedHeap = getHeapUsedAfterGc();
+        double heapFreeRatio = 1 - (double) usedHeap / maxHeap;
+        if (heapFreeRatio < minHeapFreeRatio) {
+            reasons.add(format("%.0f%% of heap free", heapFreeRatio * 100));
+        }
+        boolean ready = reasons.isEmpty();
+        if (!ready) {
+            logger.warning("Not ready: " + String.join(", ", reasons));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        try (JsonGenerator json = jsonFactory.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeBooleanField("ready", ready);
+            json.writeArrayFieldStart("reasons");
+            for (String reason : reasons) {
+                json.writeString(reason);
+            }
+            json.writeEndArray();
+            json.writeNumberField("inFlight", inFlight);
+            json.writeNumberField("limit", limit);
+            json.writeNumberField("fanOutActive", fanOutExecutor.getActiveThreads());
+            json.writeNumberField("fanOutMaxThreads", fanOutExecutor.getMaxThreads());
+            json.writeNumberField("upstreamLatencyMillis", Math.round(latency));
+            json.writeNumberField("upstreamErrorRate", errorRate);
+            json.writeBooleanField("tagsCached", tagsCached);
+            json.writeNumberField("cachedQuotes", cachedQuotes);
+            json.writeNumberField("heapUsedAfterGc", usedHeap);
+            json.writeNumberField("heapMax", maxHeap);
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Snapshot(System.nanoTime(), ready, reasons, out.toByteArray());
+    }
+
+    /**
+     * Returns the heap in use after the last garbage collection of each heap pool, i.e. without the garbage that the
+     * current usage includes. This is {@code 0} until the first collection.
+     */
+    private static long getHeapUsedAfterGc() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                MemoryUsage usage = pool.getCollectionUsage();
+                if (usage != null) {
+                    used += usage.getUsed();
+                }
+            }
+        }
+        return used;
+    }
+
+    /**
+     * An immutable readiness snapshot.
+     */
+    public static final class Snapshot {
+
+        private final long timestampNanos;
+        private final boolean ready;
+        private final List<String> reasons;
+        private final byte[] json;
+
+        Snapshot(long timestampNanos, boolean ready, List<String> reasons, byte[] json) {
+            this.timestampNanos = timestampNanos;
+            this.ready = ready;
+            this.reasons = Collections.unmodifiableList(reasons);
+            this.json = json;
+        }
+
+        public boolean isReady() {
+            return ready;
+        }
+
+        /**
+         * Returns why the instance is not ready, empty when it is.
+         */
+        public List<String> getReasons() {
+            return reasons;
+        }
+
+        /**
+         * Returns the snapshot as UTF-8 encoded JSON. The returned array must not be modified.
+         */
+        public byte[] getJson() {
+            return json;
+        }
+    }
+}
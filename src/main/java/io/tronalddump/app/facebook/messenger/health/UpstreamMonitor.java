@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.health;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps exponentially weighted moving averages of the latency and error rate of Tronald Dump API calls.
+ * <p>
+ * Every call updates the averages in constant time. Averages older than the window are reported as unknown, so an
+ * instance that stopped getting traffic because of an outage is not kept out forever.
+ *
+ * @author Marcel Overdijk
+ */
+public class UpstreamMonitor {
+
+    private final double alpha;
+    private final long windowNanos;
+
+    private double latencyMillis;
+    private double errorRate;
+    private long calls;
+    private long lastCallNanos;
+
+    public UpstreamMonitor(final double alpha, final long windowMillis) {
+        if (alpha <= 0 || alpha > 1) {
+            throw new IllegalArgumentException("'alpha' must be greater than 0 and at most 1");
+        }
+        this.alpha = alpha;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    /**
+     * Makes the given call, recording its latency and whether it failed.
+     */
+    public <T> T call(Supplier<T> call) {
+        long startNanos = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.get();
+            failed = false;
+            return result;
+        } finally {
+            record(System.nanoTime() - startNanos, failed);
+        }
+    }
+
+    public synchronized void record(long latencyNanos, boolean failed) {
+        double latency = latencyNanos / 1e6;
+        double error = failed ? 1 : 0;
+        if (calls++ == 0) {
+            latencyMillis = latency;
+            errorRate = error;
+        } else {
+            latencyMillis += alpha * (latency - latencyMillis);
+            errorRate += alpha * (error - errorRate);
+        }
+        lastCallNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the average latency in millis, or {@code -1} if there were no calls within the window.
+     */
+    public synchronized double getLatencyMillis() {
+        return isRecent() ? latencyMillis : -1;
+    }
+
+    /**
+     * Returns the average error rate between 0 and 1, or {@code -1} if there were no calls within the window.
+     */
+    public synchronized double getErrorRate() {
+        return isRecent() ? errorRate : -1;
+    }
+
+    private boolean isRecent() {
+        return calls > 0 && System.nanoTime() - lastCallNanos <= windowNanos;
+    }
+}
@@ -18,16 +18,46 @@ package io.tronalddump.app.facebook.messenger.inject;
 
 import com.github.marsbits.restfbmessenger.DefaultMessenger;
 import com.github.marsbits.restfbmessenger.Messenger;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.utils.SystemProperty;
 import com.google.inject.AbstractModule;
 import com.google.inject.Module;
 import com.google.inject.Provides;
-import com.google.inject.Scopes;
 import com.google.inject.Singleton;
-import com.rivescript.RiveScript;
+import com.restfb.DefaultFacebookClient;
+import com.restfb.FacebookClient;
+import com.restfb.Version;
+import io.tronalddump.app.facebook.messenger.broadcast.BroadcastSender;
+import io.tronalddump.app.facebook.messenger.broadcast.DatastoreSubscriberStore;
+import io.tronalddump.app.facebook.messenger.broadcast.GraphBroadcastSender;
+import io.tronalddump.app.facebook.messenger.broadcast.InMemorySubscriberStore;
+import io.tronalddump.app.facebook.messenger.broadcast.QuoteOfTheDayBroadcaster;
+import io.tronalddump.app.facebook.messenger.broadcast.SubscriberStore;
+import io.tronalddump.app.facebook.messenger.cache.QuoteStore;
+import io.tronalddump.app.facebook.messenger.cache.SearchCache;
+import io.tronalddump.app.facebook.messenger.cache.SearchCursors;
 import io.tronalddump.app.facebook.messenger.cache.TagsCache;
+import io.tronalddump.app.facebook.messenger.cache.TagsFetcher;
+import io.tronalddump.app.facebook.messenger.callback.FanOutExecutor;
+import io.tronalddump.app.facebook.messenger.callback.PageMessengers;
 import io.tronalddump.app.facebook.messenger.callback.TronaldDumpCallbackHandler;
+import io.tronalddump.app.facebook.messenger.health.MonitoredTronaldClient;
+import io.tronalddump.app.facebook.messenger.health.ReadinessMonitor;
+import io.tronalddump.app.facebook.messenger.health.UpstreamMonitor;
+import io.tronalddump.app.facebook.messenger.limit.ConcurrencyLimiter;
+import io.tronalddump.app.facebook.messenger.limit.SenderRateLimiter;
+import io.tronalddump.app.facebook.messenger.rivescript.Brain;
 import io.tronalddump.client.TronaldClient;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 /**
  * The application's main {@link Module}.
  *
@@ -35,28 +65,182 @@ import io.tronalddump.client.TronaldClient;
  */
 public class AppModule extends AbstractModule {
 
+    private static final Logger logger = Logger.getLogger(AppModule.class.getName());
+
     @Override
     protected void configure() {
+    }
+
+    @Provides
+    @Singleton
+    protected UpstreamMonitor provideUpstreamMonitor() {
+        return new UpstreamMonitor(0.1, Long.getLong("health.upstream_window", TimeUnit.MINUTES.toMillis(1)));
+    }
+
+    @Provides
+    @Singleton
+    protected TronaldClient provideTronaldClient(UpstreamMonitor upstreamMonitor) {
+        return new MonitoredTronaldClient(upstreamMonitor);
+    }
+
+    @Provides
+    @Singleton
+    protected ReadinessMonitor provideReadinessMonitor(ConcurrencyLimiter concurrencyLimiter, FanOutExecutor fanOutExecutor, UpstreamMonitor upstreamMonitor, TagsCache tagsCache, QuoteStore quoteStore) {
+        return new ReadinessMonitor(
+                concurrencyLimiter,
+                fanOutExecutor,
+                upstreamMonitor,
+                tagsCache,
+                quoteStore,
+                Long.getLong("health.snapshot_interval", 1000),
+                Double.parseDouble(System.getProperty("health.max_utilization", "0.9")),
+                Long.getLong("health.max_upstream_latency", 0),
+                Double.parseDouble(System.getProperty("health.max_upstream_error_rate", "0")),
+                Integer.getInteger("health.min_cached_quotes", 0),
+                Double.parseDouble(System.getProperty("health.min_heap_free_ratio", "0.1")));
+    }
+
+    @Provides
+    @Singleton
+    protected Brain provideBrain(RiveScriptProvider riveScriptProvider) throws IOException {
+        List<String[]> smokeCorpus = Brain.readSmokeCorpus(getClass().getClassLoader().getResourceAsStream("rivescript/tronald-dump.smoke"));
+        Brain brain = new Brain(riveScriptProvider, smokeCorpus, Integer.getInteger("rivescript.trigger_cache.max_entries", 10000));
+        if (Boolean.getBoolean("rivescript.watch")) {
+            File file = RiveScriptProvider.getFile();
+            if (file == null) {
+                throw new IllegalStateException("'rivescript.watch' requires 'rivescript.file' to be set");
+            }
+            brain.watch(file.toPath());
+        }
+        return brain;
+    }
+
+    /**
+     * Provides the tags cache with the tags loaded right away, so neither the first user nor the readiness probe waits
+     * for them. When loading fails the tags are retrieved again on first use.
+     * <p>
+     * The tags are fetched with conditional requests to the API at {@code tronalddump.api.url} and refreshed every
+     * {@code tags.refresh_interval} millis (default one day), or every {@code tags.conditional_refresh_interval} millis
+     * (default one hour) while the API answers with a validator. With {@code -Dtags.conditional_refresh=false} the
+     * tags are fetched with the {@link TronaldClient} instead.
+     */
+    @Provides
+    @Singleton
+    protected TagsCache provideTagsCache(TronaldClient tronaldClient, UpstreamMonitor upstreamMonitor) {
+        long refreshInterval = Long.getLong("tags.refresh_interval", TimeUnit.DAYS.toMillis(1));
+        TagsCache tagsCache;
+        if (Boolean.parseBoolean(System.getProperty("tags.conditional_refresh", "true"))) {
+            TagsFetcher tagsFetcher = new TagsFetcher(
+                    System.getProperty("tronalddump.api.url", "https://api.tronalddump.io"),
+                    upstreamMonitor,
+                    Integer.getInteger("tronalddump.api.timeout", 10000));
+            tagsCache = new TagsCache(
+                    tronaldClient,
+                    refreshInterval,
+                    tagsFetcher,
+                    Long.getLong("tags.conditional_refresh_interval", TimeUnit.HOURS.toMillis(1)));
+        } else {
+            tagsCache = new TagsCache(tronaldClient, refreshInterval);
+        }
+        try {
+            tagsCache.getTags();
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Loading tags failed, retrying on first use:", e);
+        }
+        return tagsCache;
+    }
+
+    @Provides
+    @Singleton
+    protected QuoteStore provideQuoteStore() {
+        return new QuoteStore();
+    }
+
+    @Provides
+    @Singleton
+    protected SearchCache provideSearchCache(QuoteStore quoteStore) {
+        return new SearchCache(
+                quoteStore,
+                Integer.getInteger("search.cache.max_queries", 1000),
+                Long.getLong("search.cache.time_to_live", TimeUnit.HOURS.toMillis(1)));
+    }
+
+    @Provides
+    @Singleton
+    protected SearchCursors provideSearchCursors(QuoteStore quoteStore) {
+        return new SearchCursors(
+                quoteStore,
+                Integer.getInteger("search.cursors.max_cursors", 10000),
+                Long.getLong("search.cursors.time_to_live", TimeUnit.MINUTES.toMillis(15)));
+    }
+
+    @Provides
+    @Singleton
+    protected SubscriberStore provideSubscriberStore() {
+        if (SystemProperty.environment.value() != null) {
+            return new DatastoreSubscriberStore(DatastoreServiceFactory.getDatastoreService());
+        }
+        return new InMemorySubscriberStore();
+    }
+
+    @Provides
+    @Singleton
+    protected QuoteOfTheDayBroadcaster provideQuoteOfTheDayBroadcaster(SubscriberStore subscriberStore, BroadcastSender broadcastSender, TronaldClient tronaldClient, FanOutExecutor executor) {
+        return new QuoteOfTheDayBroadcaster(
+                subscriberStore,
+                broadcastSender,
+                tronaldClient,
+                executor,
+                Integer.getInteger("broadcast.page_size", 500),
+                Integer.getInteger("broadcast.parallelism", 32),
+                Double.parseDouble(System.getProperty("broadcast.messages_per_second", "200")));
+    }
+
+    /**
+     * Provides the broadcast sender for the same pages as the {@link PageMessengers}, tagging messages with the
+     * {@code broadcast.message_tag} system property (default {@code NON_PROMOTIONAL_SUBSCRIPTION}).
+     */
+    @Provides
+    @Singleton
+    protected BroadcastSender provideBroadcastSender() {
+        return new GraphBroadcastSender(
+                System.getProperty("facebook.access_token"),
+                getPageAccessTokens(),
+                System.getProperty("facebook.app_secret"),
+                System.getProperty("broadcast.message_tag", "NON_PROMOTIONAL_SUBSCRIPTION"));
+    }
 
-        // Tronald Client
-        bind(TronaldClient.class)
-                .in(Scopes.SINGLETON);
+    @Provides
+    @Singleton
+    protected FanOutExecutor provideFanOutExecutor() {
+        return new FanOutExecutor(Integer.getInteger("webhook.max_threads", 8));
+    }
 
-        // RiveScript
-        bind(RiveScript.class)
-                .toProvider(RiveScriptProvider.class);
+    @Provides
+    @Singleton
+    protected ConcurrencyLimiter provideConcurrencyLimiter() {
+        return new ConcurrencyLimiter(
+                Integer.getInteger("webhook.limiter.initial_limit", 20),
+                Integer.getInteger("webhook.limiter.min_limit", 2),
+                Integer.getInteger("webhook.limiter.max_limit", 200),
+                Long.getLong("webhook.limiter.latency_target", 3000),
+                0.9);
     }
 
     @Provides
     @Singleton
-    protected TagsCache provideTagsCache(TronaldClient tronaldClient) {
-        return new TagsCache(tronaldClient);
+    protected SenderRateLimiter provideSenderRateLimiter() {
+        return new SenderRateLimiter(
+                Integer.getInteger("webhook.sender_limiter.capacity", 10),
+                Double.parseDouble(System.getProperty("webhook.sender_limiter.refill_per_second", "0.5")),
+                Integer.getInteger("webhook.sender_limiter.max_senders", 100000),
+                64);
     }
 
     @Provides
     @Singleton
-    protected TronaldDumpCallbackHandler provideTronaldDumpCallbackHandler(TronaldClient tronaldClient, RiveScript rivescript) {
-        return new TronaldDumpCallbackHandler(tronaldClient, rivescript);
+    protected TronaldDumpCallbackHandler provideTronaldDumpCallbackHandler(TronaldClient tronaldClient, Brain brain, FanOutExecutor executor, ConcurrencyLimiter concurrencyLimiter, SenderRateLimiter senderRateLimiter) {
+        return new TronaldDumpCallbackHandler(tronaldClient, brain, executor, concurrencyLimiter, senderRateLimiter);
     }
 
     @Provides
@@ -67,4 +251,40 @@ public class AppModule extends AbstractModule {
         String appSecret = System.getProperty("facebook.app_secret");
         return new DefaultMessenger(verifyToken, accessToken, appSecret, callbackHandler);
     }
+
+    /**
+     * Provides the messengers of the pages listed in the {@code facebook.pages} system property (comma separated page
+     * ids), each with the access token in {@code facebook.page.<id>.access_token}. All pages share the verify token
+     * and app secret of the Facebook app. Every page also gets a Graph API client to post rendered menu replies with.
+     */
+    @Provides
+    @Singleton
+    protected PageMessengers providePageMessengers(Messenger messenger, TronaldDumpCallbackHandler callbackHandler) {
+        String verifyToken = System.getProperty("facebook.verify_token");
+        String appSecret = System.getProperty("facebook.app_secret");
+        Map<String, Messenger> messengers = new LinkedHashMap<>();
+        Map<String, FacebookClient> clients = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : getPageAccessTokens().entrySet()) {
+            messengers.put(entry.getKey(), new DefaultMessenger(verifyToken, entry.getValue(), appSecret, callbackHandler));
+            clients.put(entry.getKey(), new DefaultFacebookClient(entry.getValue(), appSecret, Version.VERSION_2_8));
+        }
+        FacebookClient defaultClient = new DefaultFacebookClient(System.getProperty("facebook.access_token"), appSecret, Version.VERSION_2_8);
+        return new PageMessengers(messenger, messengers, defaultClient, clients);
+    }
+
+    private static Map<String, String> getPageAccessTokens() {
+        Map<String, String> accessTokens = new LinkedHashMap<>();
+        for (String pageId : System.getProperty("facebook.pages", "").split(",")) {
+            pageId = pageId.trim();
+            if (pageId.isEmpty()) {
+                continue;
+            }
+            String accessToken = System.getProperty("facebook.page." + pageId + ".access_token");
+            if (accessToken == null) {
+                throw new IllegalStateException("Missing system property 'facebook.page." + pageId + ".access_token'");
+            }
+            accessTokens.put(pageId, accessToken);
+        }
+        return accessTokens;
+    }
 }
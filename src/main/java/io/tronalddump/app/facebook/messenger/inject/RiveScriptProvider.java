@@ -21,44 +21,123 @@ import com.google.inject.Provider;
 import com.rivescript.Config;
 import com.rivescript.RiveScript;
 import com.rivescript.session.NoOpSessionManager;
+import io.tronalddump.app.facebook.messenger.broadcast.SubscriberStore;
+import io.tronalddump.app.facebook.messenger.cache.SearchCache;
+import io.tronalddump.app.facebook.messenger.cache.SearchCursors;
 import io.tronalddump.app.facebook.messenger.cache.TagsCache;
+import io.tronalddump.app.facebook.messenger.rivescript.TriggerCache;
 import io.tronalddump.app.facebook.messenger.rivescript.macro.RandomQuoteMacro;
+import io.tronalddump.app.facebook.messenger.rivescript.macro.SearchMoreMacro;
 import io.tronalddump.app.facebook.messenger.rivescript.macro.SearchQuoteMacro;
+import io.tronalddump.app.facebook.messenger.rivescript.macro.SubscriptionMacro;
 import io.tronalddump.app.facebook.messenger.rivescript.macro.TagsMacro;
 import io.tronalddump.client.TronaldClient;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
 
 /**
- * The {@link RiveScript} instance provider.
+ * The {@link RiveScript} instance provider. Every call creates a new, sorted brain.
+ * <p>
+ * The brain is loaded from the file given by the {@code rivescript.file} system property, or otherwise from the
+ * bundled {@code rivescript/tronald-dump.rive} resource. Macros are registered for the {@link TriggerCache}, and
+ * replies it must not cache are marked before loading.
  *
  * @author Marcel Overdijk
  */
 public class RiveScriptProvider implements Provider<RiveScript> {
 
+    private static final Logger logger = Logger.getLogger(RiveScriptProvider.class.getName());
+
+    private static final String SOURCE_RESOURCE = "rivescript/tronald-dump.rive";
+
     private TronaldClient tronaldClient;
     private TagsCache tagsCache;
+    private SearchCache searchCache;
+    private SearchCursors searchCursors;
+    private SubscriberStore subscriberStore;
 
     @Inject
-    public RiveScriptProvider(TronaldClient tronaldClient, TagsCache tagsCache) {
+    public RiveScriptProvider(TronaldClient tronaldClient, TagsCache tagsCache, SearchCache searchCache, SearchCursors searchCursors, SubscriberStore subscriberStore) {
         this.tronaldClient = tronaldClient;
         this.tagsCache = tagsCache;
+        this.searchCache = searchCache;
+        this.searchCursors = searchCursors;
+        this.subscriberStore = subscriberStore;
     }
 
     @Override
     public RiveScript get() {
-        ClassLoader classLoader = getClass().getClassLoader();
-        File file = new File(classLoader.getResource("rivescript/tronald-dump.rive").getFile());
+        long startTimestamp = System.currentTimeMillis();
         RiveScript bot = new RiveScript(Config.Builder
                 .utf8()
                 .forceCase(true)
                 .sessionManager(new NoOpSessionManager())
                 .build());
-        bot.setSubroutine("tags", new TagsMacro(tagsCache, 6));
-        bot.setSubroutine("randomquote", new RandomQuoteMacro(tronaldClient, tagsCache));
-        bot.setSubroutine("searchquote", new SearchQuoteMacro(tronaldClient));
-        bot.loadFile(file);
+        bot.setSubroutine("tags", TriggerCache.record(new TagsMacro(tagsCache, 6)));
+        bot.setSubroutine("randomquote", TriggerCache.record(new RandomQuoteMacro(tronaldClient, tagsCache)));
+        bot.setSubroutine("searchquote", TriggerCache.record(new SearchQuoteMacro(tronaldClient, searchCache, searchCursors, 3)));
+        bot.setSubroutine("searchmore", TriggerCache.record(new SearchMoreMacro(searchCursors, 3)));
+        bot.setSubroutine("subscribe", TriggerCache.record(new SubscriptionMacro(subscriberStore, true)));
+        bot.setSubroutine("unsubscribe", TriggerCache.record(new SubscriptionMacro(subscriberStore, false)));
+        bot.setSubroutine(TriggerCache.NO_CACHE_MACRO, TriggerCache.NO_CACHE);
+        String loadedFrom = load(bot);
         bot.sortReplies();
+        logger.info(format("Brain loaded from %s in %d millis", loadedFrom, System.currentTimeMillis() - startTimestamp));
         return bot;
     }
+
+    private String load(RiveScript bot) {
+        String location = System.getProperty("rivescript.file");
+        if (location != null) {
+            try {
+                bot.stream(TriggerCache.markUncacheable(new String(Files.readAllBytes(Paths.get(location)), StandardCharsets.UTF_8)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return location;
+        }
+        byte[] source;
+        try {
+            source = read(getClass().getClassLoader().getResourceAsStream(SOURCE_RESOURCE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        bot.stream(TriggerCache.markUncacheable(new String(source, StandardCharsets.UTF_8)));
+        return SOURCE_RESOURCE;
+    }
+
+    private byte[] read(InputStream in) throws IOException {
+        if (in == null) {
+            throw new FileNotFoundException(SOURCE_RESOURCE);
+        }
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Returns the file given by the {@code rivescript.file} system property, or {@code null} when the bundled brain
+     * is used (which may be inside a jar or war, and thus not a file at all).
+     */
+    public static File getFile() {
+        String location = System.getProperty("rivescript.file");
+        return location != null ? new File(location) : null;
+    }
 }
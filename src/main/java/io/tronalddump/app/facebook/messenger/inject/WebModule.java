@@ -16,12 +16,22 @@
 
 package io.tronalddump.app.facebook.messenger.inject;
 
-import com.github.marsbits.restfbmessenger.Messenger;
-import com.github.marsbits.restfbmessenger.webhook.WebhookServlet;
-import com.google.inject.Module;
+import com.google.inject.Provides;
 import com.google.inject.Scopes;
+import com.google.inject.Singleton;
 import com.google.inject.servlet.ServletModule;
+import io.tronalddump.app.facebook.messenger.callback.PageMessengers;
+import io.tronalddump.app.facebook.messenger.callback.TronaldDumpCallbackHandler;
+import io.tronalddump.app.facebook.messenger.servlet.BrainReloadServlet;
+import io.tronalddump.app.facebook.messenger.servlet.BroadcastServlet;
 import io.tronalddump.app.facebook.messenger.servlet.HeartbeatServlet;
+import io.tronalddump.app.facebook.messenger.servlet.ReadinessServlet;
+import io.tronalddump.app.facebook.messenger.servlet.TronaldDumpWebhookServlet;
+import io.tronalddump.app.facebook.messenger.webhook.SignatureVerifier;
+import io.tronalddump.app.facebook.messenger.webhook.WebhookRecorder;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
  * The application's {@link ServletModule}.
@@ -37,17 +47,46 @@ public class WebModule extends ServletModule {
         bind(HeartbeatServlet.class)
                 .in(Scopes.SINGLETON);
 
-        // WebhookServlet
-        try {
-            bind(WebhookServlet.class)
-                    .toConstructor(WebhookServlet.class.getConstructor(Messenger.class))
-                    .in(Scopes.SINGLETON);
-        } catch (NoSuchMethodException e) {
-            addError(e);
-        }
+        // BrainReloadServlet
+        bind(BrainReloadServlet.class)
+                .in(Scopes.SINGLETON);
+
+        // BroadcastServlet
+        bind(BroadcastServlet.class)
+                .in(Scopes.SINGLETON);
+
+        // ReadinessServlet
+        bind(ReadinessServlet.class)
+                .in(Scopes.SINGLETON);
 
         // Servlet mappings
+        serve("/admin/brain/reload").with(BrainReloadServlet.class);
+        serve("/admin/broadcast/quote-of-the-day").with(BroadcastServlet.class);
         serve("/heartbeat").with(HeartbeatServlet.class);
-        serve("/webhook").with(WebhookServlet.class);
+        serve("/readiness").with(ReadinessServlet.class);
+        serve("/webhook").with(TronaldDumpWebhookServlet.class);
+    }
+
+    @Provides
+    @Singleton
+    protected SignatureVerifier provideSignatureVerifier() {
+        String appSecret = System.getProperty("facebook.app_secret");
+        return new SignatureVerifier(appSecret);
+    }
+
+    @Provides
+    @Singleton
+    protected TronaldDumpWebhookServlet provideTronaldDumpWebhookServlet(PageMessengers messengers, TronaldDumpCallbackHandler callbackHandler, SignatureVerifier signatureVerifier) throws IOException {
+        String recorderFile = System.getProperty("webhook.recorder.file");
+        WebhookRecorder recorder = null;
+        if (recorderFile != null) {
+            String salt = System.getProperty("webhook.recorder.salt");
+            if (salt == null || salt.isEmpty()) {
+                throw new IllegalStateException("'webhook.recorder.file' requires 'webhook.recorder.salt' to be set");
+            }
+            recorder = new WebhookRecorder(new File(recorderFile), salt, Boolean.getBoolean("webhook.recorder.keep_text"));
+        }
+        int maxBodySize = Integer.getInteger("webhook.max_body_size", TronaldDumpWebhookServlet.DEFAULT_MAX_BODY_SIZE);
+        return new TronaldDumpWebhookServlet(messengers, callbackHandler, signatureVerifier, recorder, maxBodySize);
     }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.jfr;
+
+/**
+ * Custom Java Flight Recorder events for bot operations, so CPU and allocation samples of a recording can be related
+ * to what the bot was doing.
+ * <p>
+ * The events are disabled by default; enable them in a recording settings file (e.g. {@code
+ * io.tronalddump.SendReply#enabled=true}) or with {@code jcmd <pid> JFR.start settings=..}. On JVMs without
+ * {@code jdk.jfr} (e.g. App Engine) every method returns a shared no-op {@link Scope} and the event classes are
+ * never loaded.
+ * <p>
+ * Events never carry user input: replies are recorded by payload type and macro calls by their argument count and
+ * output length.
+ *
+ * @author Marcel Overdijk
+ */
+public final class Events {
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private Events() {
+    }
+
+    /**
+     * Starts a reply send for the given payload type, e.g. {@code text} or {@code TAGS_MORE}; set the reply type as
+     * result.
+     */
+    public static Scope sendReply(String payloadType) {
+        return AVAILABLE ? JfrEvents.sendReply(payloadType) : Scope.NOOP;
+    }
+
+    /**
+     * Starts a macro call with the given arguments; set the output as result, of which only the length is recorded.
+     */
+    public static Scope macroCall(String macro, String[] args) {
+        return AVAILABLE ? JfrEvents.macroCall(macro, args) : Scope.NOOP;
+    }
+
+    /**
+     * Starts a tags cache refresh; set the number of cached tags as result, and whether they were modified.
+     */
+    public static TagsRefreshScope tagsRefresh() {
+        return AVAILABLE ? JfrEvents.tagsRefresh() : TagsRefreshScope.NOOP;
+    }
+
+    /**
+     * Starts a Send API call; set the outcome ({@code ok} or the exception class) as result.
+     */
+    public static Scope sendApi(String operation) {
+        return AVAILABLE ? JfrEvents.sendApi(operation) : Scope.NOOP;
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, Events.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * A started event, committed on {@link #close()}. The no-op scope ignores all calls.
+     */
+    public static class Scope implements AutoCloseable {
+
+        static final Scope NOOP = new Scope();
+
+        public void result(String result) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * A started tags cache refresh.
+     */
+    public static class TagsRefreshScope extends Scope {
+
+        static final TagsRefreshScope NOOP = new TagsRefreshScope();
+
+        public void modified(boolean modified) {
+        }
+    }
+}
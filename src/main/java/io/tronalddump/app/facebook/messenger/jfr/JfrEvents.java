@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The {@code jdk.jfr} event types; only loaded by {@link Events} when {@code jdk.jfr} is available.
+ *
+ * @author Marcel Overdijk
+ */
+final class JfrEvents {
+
+    private JfrEvents() {
+    }
+
+    static Events.Scope sendReply(String payloadType) {
+        SendReplyEvent event = new SendReplyEvent();
+        if (!event.isEnabled()) {
+            return Events.Scope.NOOP;
+        }
+        event.payloadType = payloadType;
+        return new EventScope(event) {
+
+            @Override
+            public void result(String result) {
+                event.replyType = result;
+            }
+        };
+    }
+
+    static Events.Scope macroCall(String macro, String[] args) {
+        MacroCallEvent event = new MacroCallEvent();
+        if (!event.isEnabled()) {
+            return Events.Scope.NOOP;
+        }
+        event.macro = macro;
+        event.argumentCount = args.length;
+        return new EventScope(event) {
+
+            @Override
+            public void result(String result) {
+                event.outputLength = result != null ? result.length() : 0;
+            }
+        };
+    }
+
+    static Events.TagsRefreshScope tagsRefresh() {
+        TagsRefreshEvent event = new TagsRefreshEvent();
+        if (!event.isEnabled()) {
+            return Events.TagsRefreshScope.NOOP;
+        }
+        event.begin();
+        return new Events.TagsRefreshScope() {
+
+            @Override
+            public void result(String result) {
+                event.tagCount = Integer.parseInt(result);
+            }
+
+            @Override
+            public void modified(boolean modified) {
+                event.modified = modified;
+            }
+
+            @Override
+            public void close() {
+                event.commit();
+            }
+        };
+    }
+
+    static Events.Scope sendApi(String operation) {
+        SendApiEvent event = new SendApiEvent();
+        if (!event.isEnabled()) {
+            return Events.Scope.NOOP;
+        }
+        event.operation = operation;
+        return new EventScope(event) {
+
+            @Override
+            public void result(String result) {
+                event.outcome = result;
+            }
+        };
+    }
+
+    private static class EventScope extends Events.Scope {
+
+        private final Event delegate;
+
+        EventScope(Event delegate) {
+            this.delegate = delegate;
+            delegate.begin();
+        }
+
+        @Override
+        public void close() {
+            delegate.commit();
+        }
+    }
+
+    @Name("io.tronalddump.SendReply")
+    @Label("Send Reply")
+    @Description("A RiveScript reply converted and sent to a recipient")
+    @Category("Tronald Dump")
+    @Enabled(false)
+    @StackTrace(false)
+    static class SendReplyEvent extends Event {
+
+        @Label("Payload Type")
+        String payloadType;
+
+        @Label("Reply Type")
+        String replyType;
+    }
+
+    @Name("io.tronalddump.MacroCall")
+    @Label("Macro Call")
+    @Description("A RiveScript macro call, including any Tronald Dump API call it makes")
+    @Category("Tronald Dump")
+    @Enabled(false)
+    @StackTrace(false)
+    static class MacroCallEvent extends Event {
+
+        @Label("Macro")
+        String macro;
+
+        @Label("Argument Count")
+        int argumentCount;
+
+        @Label("Output Length")
+        int outputLength;
+    }
+
+    @Name("io.tronalddump.TagsRefresh")
+    @Label("Tags Refresh")
+    @Description("A refresh of the tags cache from the Tronald Dump API")
+    @Category("Tronald Dump")
+    @Enabled(false)
+    @StackTrace(false)
+    static class TagsRefreshEvent extends Event {
+
+        @Label("Tag Count")
+        int tagCount;
+
+        @Label("Modified")
+        boolean modified;
+    }
+
+    @Name("io.tronalddump.SendApi")
+    @Label("Send API Call")
+    @Description("A call to the Messenger Send API")
+    @Category("Tronald Dump")
+    @Enabled(false)
+    @StackTrace(false)
+    static class SendApiEvent extends Event {
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Outcome")
+        String outcome;
+    }
+}
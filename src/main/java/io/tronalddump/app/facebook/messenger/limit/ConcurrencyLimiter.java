@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.limit;
+
+import com.restfb.exception.FacebookGraphException;
+import com.restfb.exception.FacebookNetworkException;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Adaptive concurrency limiter using additive increase / multiplicative decrease (AIMD) on observed latency.
+ * <p>
+ * While requests complete within the latency target and the limit is actually used, the limit grows by roughly one
+ * per limit's worth of requests; a request that is slower than the target or fails with an {@link #isOverload
+ * overload} error cuts the limit by the backoff ratio. Lower {@link Priority priorities} may only use part of the limit, so when the limit shrinks cheap requests
+ * keep getting through while expensive ones are shed first.
+ *
+ * @author Marcel Overdijk
+ */
+public class ConcurrencyLimiter {
+
+    private static final Logger logger = Logger.getLogger(ConcurrencyLimiter.class.getName());
+
+    // Graph API error codes for unknown and temporary errors and application, user and page rate limits.
+    private static final Set<Integer> OVERLOAD_ERROR_CODES = new HashSet<>(Arrays.asList(1, 2, 4, 17, 32, 613));
+
+    public enum Priority {
+
+        /** Static replies and cached pages, e.g. {@code GET_STARTED}, {@code HELP} and {@code TAGS_MORE_n}. */
+        HIGH(1.0),
+
+        /** Postbacks that need a single upstream call, e.g. {@code RANDOM_QUOTE}. */
+        MEDIUM(0.9),
+
+        /** Free text messages, which may end in upstream searches. */
+        LOW(0.7);
+
+        private final double share;
+
+        Priority(double share) {
+            this.share = share;
+        }
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private final double backoffRatio;
+
+    private double limit;
+    private int inFlight;
+
+    public ConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit, final long latencyTargetMillis, final double backoffRatio) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("'minLimit' <= 'initialLimit' <= 'maxLimit' must hold and 'minLimit' must be greater than 0");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("'backoffRatio' must be between 0 and 1");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTargetNanos = latencyTargetMillis * 1000000L;
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * Acquires a permit for a request of the given priority.
+     *
+     * @return the permit, or {@code null} if the request should be shed
+     */
+    public synchronized Permit tryAcquire(Priority priority) {
+        if (inFlight >= Math.max(1, (int) (limit * priority.share))) {
+            return null;
+        }
+        inFlight++;
+        return new Permit(System.nanoTime());
+    }
+
+    /**
+     * Returns whether the given failure signals overload: a timeout or other I/O error, a {@code 5xx} or
+     * {@code 429} response, or a transient or rate limit Graph API error. Permanent errors, e.g. a Send API call to a
+     * user who blocked the page, do not.
+     */
+    public static boolean isOverload(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FacebookGraphException) {
+                FacebookGraphException graphException = (FacebookGraphException) cause;
+                Integer status = graphException.getHttpStatusCode();
+                return (status != null && (status >= 500 || status == 429))
+                        || Boolean.TRUE.equals(graphException.getIsTransient())
+                        || OVERLOAD_ERROR_CODES.contains(graphException.getErrorCode());
+            }
+            if (cause instanceof FacebookNetworkException) {
+                Integer status = ((FacebookNetworkException) cause).getHttpStatusCode();
+                return status == null || status >= 500 || status == 429;
+            }
+            if (cause instanceof IOException) {
+                // HttpURLConnection reports 404 as FileNotFoundException and 5xx, timeouts and refused connections
+                // as other IOExceptions.
+                return !(cause instanceof FileNotFoundException);
+            }
+        }
+        return false;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private synchronized void release(long latencyNanos, boolean failed) {
+        boolean saturated = inFlight >= limit / 2;
+        inFlight--;
+        double previousLimit = limit;
+        if (failed || latencyNanos > latencyTargetNanos) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (saturated) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        if ((int) limit != (int) previousLimit) {
+            logger.fine(format("Concurrency limit changed from %d to %d", (int) previousLimit, (int) limit));
+        }
+    }
+
+    /**
+     * Permit for a single request which must be released exactly once.
+     */
+    public class Permit {
+
+        private final long startNanos;
+        private boolean released;
+
+        private Permit(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        public void onSuccess() {
+            release(false);
+        }
+
+        public void onFailure() {
+            release(true);
+        }
+
+        /**
+         * Releases this permit after the given failure, which only cuts the limit if it signals overload.
+         */
+        public void onFailure(Throwable e) {
+            release(isOverload(e));
+        }
+
+        private void release(boolean failed) {
+            if (!released) {
+                released = true;
+                ConcurrencyLimiter.this.release(System.nanoTime() - startNanos, failed);
+            }
+        }
+    }
+}
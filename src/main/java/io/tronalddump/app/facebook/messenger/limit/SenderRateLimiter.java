@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.limit;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Per-sender rate limiter with a token bucket for every sender.
+ * <p>
+ * Buckets are kept in a fixed number of independently locked stripes, each an access ordered map bounded to its
+ * share of {@code maxSenders}. Buckets idle for longer than the time to refill completely are evicted on access; such
+ * buckets are full anyway, so evicting them never lets a sender through that would otherwise be throttled. When a
+ * stripe is still full, the least recently used bucket of a sender that is not throttled is evicted to make room for
+ * a new sender. Buckets of throttled senders are pinned until they are idle, so a throttled sender can't get a fresh
+ * bucket by being pushed out by others; a stripe only outgrows its share while it is full of throttled senders.
+ *
+ * @author Marcel Overdijk
+ */
+public class SenderRateLimiter {
+
+    public enum Result {
+
+        /** The message may be handled. */
+        ALLOWED,
+
+        /** The sender is throttled and should be told so. */
+        THROTTLED,
+
+        /** The sender is throttled and has already been told so since the bucket ran empty. */
+        THROTTLED_NOTIFIED
+    }
+
+    private static final int MAX_IDLE_EVICTIONS = 4;
+    private static final int MAX_EVICTION_SCAN = 8;
+
+    private final double capacity;
+    private final double refillPerNano;
+    private final long idleNanos;
+    private final Stripe[] stripes;
+    private final int mask;
+
+    /**
+     * @param capacity the number of messages a sender may burst
+     * @param refillPerSecond the number of messages per second a sender may sustain
+     * @param maxSenders the maximum number of senders tracked
+     * @param concurrency the minimum number of stripes, rounded up to a power of two
+     */
+    public SenderRateLimiter(final int capacity, final double refillPerSecond, final int maxSenders, final int concurrency) {
+        if (capacity < 1 || refillPerSecond <= 0 || maxSenders < 1 || concurrency < 1) {
+            throw new IllegalArgumentException("'capacity', 'refillPerSecond', 'maxSenders' and 'concurrency' must be greater than 0");
+        }
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1e9;
+        this.idleNanos = (long) (capacity / refillPerNano);
+        int stripeCount = 1;
+        while (stripeCount < concurrency) {
+            stripeCount <<= 1;
+        }
+        this.stripes = new Stripe[stripeCount];
+        this.mask = stripeCount - 1;
+        int maxSendersPerStripe = Math.max(1, maxSenders / stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(maxSendersPerStripe);
+        }
+    }
+
+    public Result tryAcquire(String senderId) {
+        return tryAcquire(senderId, System.nanoTime());
+    }
+
+    Result tryAcquire(String senderId, long now) {
+        Stripe stripe = stripes[spread(senderId.hashCode()) & mask];
+        synchronized (stripe) {
+            stripe.evictIdle(now, idleNanos);
+            Bucket bucket = stripe.get(senderId);
+            if (bucket == null) {
+                stripe.evictUnthrottled();
+                bucket = new Bucket(capacity, now);
+                stripe.put(senderId, bucket);
+            } else {
+                bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.timestamp) * refillPerNano);
+                bucket.timestamp = now;
+            }
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                bucket.notified = false;
+                return Result.ALLOWED;
+            }
+            if (bucket.notified) {
+                return Result.THROTTLED_NOTIFIED;
+            }
+            bucket.notified = true;
+            return Result.THROTTLED;
+        }
+    }
+
+    /**
+     * Returns the number of senders currently tracked.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static class Stripe extends LinkedHashMap<String, Bucket> {
+
+        private final int maxSize;
+
+        private Stripe(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        private void evictUnthrottled() {
+            if (size() < maxSize) {
+                return;
+            }
+            Iterator<Bucket> iterator = values().iterator();
+            for (int i = 0; i < MAX_EVICTION_SCAN && iterator.hasNext(); i++) {
+                if (!iterator.next().notified) {
+                    iterator.remove();
+                    return;
+                }
+            }
+        }
+
+        private void evictIdle(long now, long idleNanos) {
+            Iterator<Bucket> iterator = values().iterator();
+            for (int i = 0; i < MAX_IDLE_EVICTIONS && iterator.hasNext(); i++) {
+                if (now - iterator.next().timestamp < idleNanos) {
+                    break;
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Bucket {
+
+        private double tokens;
+        private long timestamp;
+        private boolean notified;
+
+        private Bucket(double tokens, long timestamp) {
+            this.tokens = tokens;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.rivescript;
+
+import com.google.inject.Provider;
+import com.rivescript.RiveScript;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Holder of the current {@link RiveScript} brain which can be reloaded while the bot is running.
+ * <p>
+ * A reload builds and sorts a new brain next to the current one and checks it against the smoke corpus before
+ * swapping it in atomically. Replies in flight finish on the brain they started with and are never blocked; a
+ * brain that fails to load or fails the smoke corpus is discarded and the current brain stays in place.
+ * <p>
+ * Replies can be resolved through a {@link TriggerCache} of {@code triggerCacheSize} entries; every brain gets its
+ * own cache, so a reload starts with an empty one.
+ * <p>
+ * The smoke corpus consists of {@code input => expected reply prefix} lines (or just {@code input} when any reply
+ * will do). Inputs should not call macros, as these would hit upstream APIs.
+ *
+ * @author Marcel Overdijk
+ */
+public class Brain {
+
+    private static final Logger logger = Logger.getLogger(Brain.class.getName());
+
+    private static final String SMOKE_USER = "smoke-test";
+
+    private final Provider<RiveScript> factory;
+    private final List<String[]> smokeCorpus;
+    private final int triggerCacheSize;
+    private final AtomicReference<Generation> current = new AtomicReference<>();
+    private final Object reloadLock = new Object();
+
+    public Brain(final Provider<RiveScript> factory, final List<String[]> smokeCorpus) {
+        this(factory, smokeCorpus, 0);
+    }
+
+    public Brain(final Provider<RiveScript> factory, final List<String[]> smokeCorpus, final int triggerCacheSize) {
+        this.factory = requireNonNull(factory, "'factory' must not be null");
+        this.smokeCorpus = requireNonNull(smokeCorpus, "'smokeCorpus' must not be null");
+        this.triggerCacheSize = triggerCacheSize;
+        this.current.set(new Generation(factory.get(), triggerCacheSize));
+    }
+
+    /**
+     * Returns the current brain.
+     */
+    public RiveScript get() {
+        return current.get().bot;
+    }
+
+    /**
+     * Returns the reply of the current brain to the given message.
+     */
+    public String reply(String user, String message) {
+        Generation generation = current.get();
+        if (generation.triggerCache == null) {
+            return generation.bot.reply(user, message);
+        }
+        return generation.triggerCache.reply(generation.bot, user, message);
+    }
+
+    /**
+     * Builds a new brain, checks it against the smoke corpus and swaps it in.
+     *
+     * @throws IllegalStateException if the new brain fails the smoke corpus
+     */
+    public void reload() {
+        synchronized (reloadLock) {
+            long startTimestamp = System.currentTimeMillis();
+            RiveScript newBot = factory.get();
+            smokeTest(newBot);
+            current.set(new Generation(newBot, triggerCacheSize));
+            logger.info(format("Brain reloaded in %d millis", System.currentTimeMillis() - startTimestamp));
+        }
+    }
+
+    private void smokeTest(RiveScript newBot) {
+        for (String[] test : smokeCorpus) {
+            String reply = newBot.reply(SMOKE_USER, test[0]);
+            if (reply == null || reply.isEmpty() || reply.startsWith("ERR:")) {
+                throw new IllegalStateException(format("Smoke test failed for '%s': %s", test[0], reply));
+            }
+            if (test.length > 1 && !reply.startsWith(test[1])) {
+                throw new IllegalStateException(format("Smoke test failed for '%s': expected '%s' but got '%s'", test[0], test[1], reply));
+            }
+        }
+    }
+
+    /**
+     * Reloads the brain whenever the given file changes. The file is watched on a daemon thread, so this is only
+     * meant for deployments that allow background threads and writable files (i.e. not App Engine).
+     */
+    public void watch(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path name = file.getFileName();
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread watcher = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key;
+                try {
+                    key = watchService.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= name.equals(event.context());
+                }
+                key.reset();
+                if (changed) {
+                    logger.info(format("Brain file %s changed", file));
+                    try {
+                        reload();
+                    } catch (RuntimeException e) {
+                        logger.log(Level.SEVERE, "Brain reload failed, keeping current brain:", e);
+                    }
+                }
+            }
+        }, "brain-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        logger.info(format("Watching brain file %s", file));
+    }
+
+    /**
+     * Reads a smoke corpus from the given stream; blank lines and lines starting with {@code //} are ignored.
+     */
+    public static List<String[]> readSmokeCorpus(InputStream in) throws IOException {
+        if (in == null) {
+            return Collections.emptyList();
+        }
+        List<String[]> smokeCorpus = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("//")) {
+                    continue;
+                }
+                String[] test = line.split("\\s*=>\\s*", 2);
+                smokeCorpus.add(test);
+            }
+        }
+        return smokeCorpus;
+    }
+
+    private static class Generation {
+
+        final RiveScript bot;
+        final TriggerCache triggerCache;
+
+        Generation(RiveScript bot, int triggerCacheSize) {
+            this.bot = bot;
+            this.triggerCache = triggerCacheSize > 0 ? new TriggerCache(triggerCacheSize) : null;
+        }
+    }
+}
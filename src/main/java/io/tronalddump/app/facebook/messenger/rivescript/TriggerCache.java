@@ -0,0 +1,277 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.rivescript;
+
+import com.rivescript.RiveScript;
+import com.rivescript.macro.Subroutine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bounded cache of resolved replies of one brain, keyed by normalised input.
+ * <p>
+ * RiveScript does not expose its trigger matching, so instead of the matched trigger and its stars the reply is
+ * cached as a template: the text the trigger's reply rendered to, with a hole for every macro call and the macro's
+ * arguments (which hold the stars). On a hit the trigger search is skipped and only the macros are called again, so
+ * e.g. a random quote is still random. Macros take part when they are registered {@link #record recorded}.
+ * <p>
+ * Replies that do not follow from the input alone must not be cached; {@link #markUncacheable} marks them in the
+ * code before it is loaded with a call to the {@link #NO_CACHE} macro. A new brain gets a new cache.
+ *
+ * @author Marcel Overdijk
+ */
+public class TriggerCache {
+
+    private static final ThreadLocal<Recording> RECORDING = new ThreadLocal<>();
+
+    /**
+     * The name of the {@link #NO_CACHE} macro.
+     */
+    public static final String NO_CACHE_MACRO = "nocache";
+
+    /**
+     * Macro marking the reply it is called from as not cacheable; its output is empty.
+     */
+    public static final Subroutine NO_CACHE = (rivescript, args) -> {
+        Recording recording = RECORDING.get();
+        if (recording != null) {
+            recording.cacheable = false;
+        }
+        return "";
+    };
+
+    // Macro outputs are enclosed in these while recording, to find them back in the reply.
+    private static final char OUTPUT_START = '\u0002';
+    private static final char OUTPUT_END = '\u0003';
+
+    private static final Pattern PUNCTUATION = Pattern.compile("[.,!?;:]");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern STATEFUL_TAGS = Pattern.compile("\\{random}|<(id|get|set|add|sub|mult|div|date|env)[ >]");
+
+    private final Map<String, Template> templates;
+
+    public TriggerCache(final int maxEntries) {
+        this.templates = new LinkedHashMap<String, Template>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the reply of the given brain to the given message, resolved from this cache if possible.
+     */
+    public String reply(RiveScript bot, String user, String message) {
+        String input = normalize(message);
+        Template template;
+        synchronized (templates) {
+            template = templates.get(input);
+        }
+        if (template != null) {
+            return template.render(bot);
+        }
+        Recording recording = new Recording();
+        RECORDING.set(recording);
+        String reply;
+        try {
+            reply = bot.reply(user, input);
+        } finally {
+            RECORDING.remove();
+        }
+        return cache(input, recording, reply);
+    }
+
+    /**
+     * Returns the number of cached replies.
+     */
+    public int size() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+
+    /**
+     * Caches the template of the given recorded reply if possible, and returns the reply without output markers.
+     */
+    private String cache(String input, Recording recording, String reply) {
+        if (reply == null) {
+            return null;
+        }
+        List<String> literals = new ArrayList<>();
+        StringBuilder text = new StringBuilder(reply.length());
+        int from = 0;
+        int start;
+        while ((start = reply.indexOf(OUTPUT_START, from)) >= 0) {
+            int end = reply.indexOf(OUTPUT_END, start);
+            if (end < 0) {
+                recording.cacheable = false;
+                break;
+            }
+            literals.add(reply.substring(from, start));
+            text.append(reply, from, start).append(reply, start + 1, end);
+            from = end + 1;
+        }
+        literals.add(reply.substring(from));
+        text.append(reply, from, reply.length());
+        String output = strip(text);
+        if (recording.cacheable && !reply.startsWith("ERR:") && literals.size() == recording.calls.size() + 1) {
+            synchronized (templates) {
+                templates.put(input, new Template(literals.toArray(new String[0]), recording.calls.toArray(new Call[0])));
+            }
+        }
+        return output;
+    }
+
+    private static String strip(StringBuilder text) {
+        for (int i = text.length() - 1; i >= 0; i--) {
+            char c = text.charAt(i);
+            if (c == OUTPUT_START || c == OUTPUT_END) {
+                text.deleteCharAt(i);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Normalises the given message the way RiveScript does before matching: lower case, without punctuation and
+     * with whitespace collapsed.
+     */
+    public static String normalize(String message) {
+        if (message == null) {
+            return "";
+        }
+        String input = PUNCTUATION.matcher(message.toLowerCase(Locale.ROOT)).replaceAll("");
+        return WHITESPACE.matcher(input).replaceAll(" ").trim();
+    }
+
+    /**
+     * Returns the given macro, recording its calls for replies being resolved through a {@link TriggerCache}.
+     */
+    public static Subroutine record(Subroutine subroutine) {
+        requireNonNull(subroutine, "'subroutine' must not be null");
+        return (rivescript, args) -> {
+            String output = subroutine.call(rivescript, args);
+            Recording recording = RECORDING.get();
+            if (recording == null) {
+                return output;
+            }
+            if (output == null) {
+                recording.cacheable = false;
+                return null;
+            }
+            recording.calls.add(new Call(subroutine, args.clone()));
+            return OUTPUT_START + output + OUTPUT_END;
+        };
+    }
+
+    /**
+     * Marks the replies in the given RiveScript code that have a random or conditional reply, or use tags depending
+     * on user variables or time, with a call to the {@link #NO_CACHE} macro. When the code has a {@code begin} block
+     * all replies are marked.
+     */
+    public static String markUncacheable(String code) {
+        String[] lines = code.split("\n", -1);
+        boolean all = false;
+        for (String line : lines) {
+            all |= line.trim().startsWith("> begin");
+        }
+        StringBuilder marked = new StringBuilder(code.length() + 64);
+        int blockStart = 0;
+        for (int i = 0; i <= lines.length; i++) {
+            if (i == lines.length || lines[i].trim().startsWith("+") || lines[i].trim().startsWith(">") || lines[i].trim().startsWith("<")) {
+                appendBlock(marked, lines, blockStart, i, all);
+                blockStart = i;
+            }
+        }
+        return marked.toString();
+    }
+
+    private static void appendBlock(StringBuilder marked, String[] lines, int from, int to, boolean all) {
+        int replies = 0;
+        boolean uncacheable = all;
+        for (int i = from; i < to; i++) {
+            String line = lines[i].trim();
+            if (line.startsWith("-")) {
+                replies++;
+            } else if (line.startsWith("*") || line.startsWith("%")) {
+                uncacheable = true;
+            }
+            if (!line.startsWith("//") && STATEFUL_TAGS.matcher(line).find()) {
+                uncacheable = true;
+            }
+        }
+        uncacheable |= replies > 1;
+        for (int i = from; i < to; i++) {
+            String line = lines[i];
+            String trimmed = line.trim();
+            marked.append(line);
+            if (uncacheable && (trimmed.startsWith("-") || trimmed.startsWith("*"))) {
+                marked.append("<call>").append(NO_CACHE_MACRO).append("</call>");
+            }
+            if (i < lines.length - 1) {
+                marked.append('\n');
+            }
+        }
+    }
+
+    private static class Recording {
+
+        final List<Call> calls = new ArrayList<>();
+        boolean cacheable = true;
+    }
+
+    private static class Call {
+
+        final Subroutine subroutine;
+        final String[] args;
+
+        Call(Subroutine subroutine, String[] args) {
+            this.subroutine = subroutine;
+            this.args = args;
+        }
+    }
+
+    private static class Template {
+
+        final String[] literals;
+        final Call[] calls;
+
+        Template(String[] literals, Call[] calls) {
+            this.literals = literals;
+            this.calls = calls;
+        }
+
+        String render(RiveScript bot) {
+            if (calls.length == 0) {
+                return literals[0];
+            }
+            StringBuilder reply = new StringBuilder();
+            for (int i = 0; i < calls.length; i++) {
+                reply.append(literals[i]).append(calls[i].subroutine.call(bot, calls[i].args.clone()));
+            }
+            return reply.append(literals[calls.length]).toString();
+        }
+    }
+}
@@ -19,9 +19,11 @@ package io.tronalddump.app.facebook.messenger.rivescript.macro;
 import com.rivescript.RiveScript;
 import com.rivescript.macro.Subroutine;
 import io.tronalddump.app.facebook.messenger.cache.TagsCache;
+import io.tronalddump.app.facebook.messenger.jfr.Events;
+import io.tronalddump.app.facebook.messenger.trace.Span;
+import io.tronalddump.app.facebook.messenger.trace.Tracer;
 import io.tronalddump.client.TronaldClient;
 
-import java.util.List;
 import java.util.logging.Logger;
 
 import static java.lang.String.format;
@@ -46,18 +48,29 @@ public class RandomQuoteMacro implements Subroutine {
 
     @Override
     public String call(RiveScript rivescript, String[] args) {
+        try (Events.Scope jfrEvent = Events.macroCall("randomquote", args)) {
+            String output = doCall(args);
+            jfrEvent.result(output);
+            return output;
+        }
+    }
+
+    private String doCall(String[] args) {
         if (args.length == 1) {
-            String tag = args[0];
-            List<String> tags = tagsCache.getTags();
-            if (tags.contains(tag)) {
+            String tag = tagsCache.resolveTag(args[0]);
+            if (tag != null) {
                 logger.info("Retrieving random quote with tag: " + tag);
-                return tronaldClient.getRandomQuote(tag).getValue();
+                try (Span span = Tracer.startSpan("tronald getRandomQuote").tag("tag", tag)) {
+                    return tronaldClient.getRandomQuote(tag).getValue();
+                }
             } else {
-                return format("I said so many stupid things but there is no tag '%s' yet. Type 'tags' to see available tags.", tag);
+                return format("I said so many stupid things but there is no tag '%s' yet. Type 'tags' to see available tags.", args[0]);
             }
         } else {
             logger.info("Retrieving random quote");
-            return tronaldClient.getRandomQuote().getValue();
+            try (Span span = Tracer.startSpan("tronald getRandomQuote")) {
+                return tronaldClient.getRandomQuote().getValue();
+            }
         }
     }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.rivescript.macro;
+
+import com.rivescript.RiveScript;
+import com.rivescript.macro.Subroutine;
+import io.tronalddump.app.facebook.messenger.cache.QuoteView;
+import io.tronalddump.app.facebook.messenger.cache.SearchCursors;
+import io.tronalddump.app.facebook.messenger.jfr.Events;
+
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * RiveScript {@link Subroutine} for retrieving the next page of search results from a search cursor. The argument
+ * is {@code <cursor id>_<page number>}, as in the {@code SEARCH_MORE_<cursor id>_<page number>} payload.
+ *
+ * @author Marcel Overdijk
+ */
+public class SearchMoreMacro implements Subroutine {
+
+    private final SearchCursors searchCursors;
+    private final int pageSize;
+
+    public SearchMoreMacro(final SearchCursors searchCursors, final int pageSize) {
+        this.searchCursors = requireNonNull(searchCursors, "'searchCursors' must not be null");
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public String call(RiveScript rivescript, String[] args) {
+        try (Events.Scope jfrEvent = Events.macroCall("searchmore", args)) {
+            String output = doCall(args);
+            jfrEvent.result(output);
+            return output;
+        }
+    }
+
+    private String doCall(String[] args) {
+        String[] parts = args.length > 0 ? args[0].split("_") : new String[0];
+        int pageNumber = 1;
+        try {
+            pageNumber = Integer.parseInt(parts[1]);
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException ignore) {
+        }
+        String cursorId = parts.length > 0 ? parts[0] : null;
+        List<QuoteView> quotes = cursorId != null ? searchCursors.getResults(cursorId) : null;
+        if (quotes == null) {
+            return "Those search results are old news. Search again, it's going to be tremendous!";
+        }
+        return SearchQuoteMacro.formatPage(searchCursors.getQuery(cursorId), quotes, cursorId, pageNumber, pageSize);
+    }
+}
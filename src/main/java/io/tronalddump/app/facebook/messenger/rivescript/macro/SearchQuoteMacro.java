@@ -18,18 +18,27 @@ package io.tronalddump.app.facebook.messenger.rivescript.macro;
 
 import com.rivescript.RiveScript;
 import com.rivescript.macro.Subroutine;
-import io.tronalddump.client.Quote;
+import io.tronalddump.app.facebook.messenger.cache.QuoteView;
+import io.tronalddump.app.facebook.messenger.cache.SearchCache;
+import io.tronalddump.app.facebook.messenger.cache.SearchCursors;
+import io.tronalddump.app.facebook.messenger.callback.BatchContext;
+import io.tronalddump.app.facebook.messenger.jfr.Events;
+import io.tronalddump.app.facebook.messenger.trace.Span;
+import io.tronalddump.app.facebook.messenger.trace.Tracer;
 import io.tronalddump.client.TronaldClient;
 
 import java.util.List;
-import java.util.Random;
 import java.util.logging.Logger;
 
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
 /**
- * RiveScript {@link Subroutine} for searching a quote.
+ * RiveScript {@link Subroutine} for searching quotes.
+ * <p>
+ * A single result is returned as plain text. More results are returned a page at a time with a {@code More...}
+ * quick reply carrying a {@code SEARCH_MORE_<cursor id>_<page number>} payload; the results are kept in
+ * {@link SearchCursors} so the {@link SearchMoreMacro} pages through them without searching again.
  *
  * @author Marcel Overdijk
  */
@@ -37,22 +46,71 @@ public class SearchQuoteMacro implements Subroutine {
 
     private static final Logger logger = Logger.getLogger(SearchQuoteMacro.class.getName());
 
+    private static final int MAX_QUOTE_LENGTH = 500;
+
     private final TronaldClient tronaldClient;
+    private final SearchCache searchCache;
+    private final SearchCursors searchCursors;
+    private final int pageSize;
 
-    public SearchQuoteMacro(final TronaldClient tronaldClient) {
+    public SearchQuoteMacro(final TronaldClient tronaldClient, final SearchCache searchCache, final SearchCursors searchCursors, final int pageSize) {
         this.tronaldClient = requireNonNull(tronaldClient, "'tronaldClient' must not be null");
+        this.searchCache = requireNonNull(searchCache, "'searchCache' must not be null");
+        this.searchCursors = requireNonNull(searchCursors, "'searchCursors' must not be null");
+        this.pageSize = pageSize;
     }
 
     @Override
     public String call(RiveScript rivescript, String[] args) {
+        try (Events.Scope jfrEvent = Events.macroCall("searchquote", args)) {
+            String output = doCall(args);
+            jfrEvent.result(output);
+            return output;
+        }
+    }
+
+    private String doCall(String[] args) {
         String query = args[0];
-        logger.info("Searching quotes with query: " + query);
-        List<Quote> quotes = tronaldClient.search(query).getContent();
-        if (quotes != null && quotes.size() > 0) {
-            int i = new Random().nextInt(quotes.size());
-            return quotes.get(i).getValue();
-        } else {
+        List<QuoteView> quotes = searchCache.get(query);
+        if (quotes == null) {
+            quotes = BatchContext.memoize("searchquote:" + query, () -> {
+                logger.info("Searching quotes with query: " + query);
+                try (Span span = Tracer.startSpan("tronald search")) {
+                    return searchCache.put(query, tronaldClient.search(query).getContent());
+                }
+            });
+        }
+        if (quotes == null || quotes.isEmpty()) {
             return format("Your search for '%s' did not match any quote. Make sure that all words are spelled correctly. Try different keywords. Try more general keywords.", query);
+        } else if (quotes.size() == 1) {
+            return quotes.get(0).getValue();
+        } else {
+            return formatPage(query, quotes, searchCursors.open(query, quotes), 1, pageSize);
+        }
+    }
+
+    /**
+     * Formats the given page of search results, followed by a {@code More...} quick reply if there are more pages.
+     */
+    static String formatPage(String query, List<QuoteView> quotes, String cursorId, int pageNumber, int pageSize) {
+        int pages = (quotes.size() + pageSize - 1) / pageSize;
+        if (pageNumber < 1 || pageNumber > pages) {
+            pageNumber = 1;
+        }
+        int from = (pageNumber - 1) * pageSize;
+        int to = Math.min(from + pageSize, quotes.size());
+        StringBuilder sb = new StringBuilder();
+        sb.append(format("Found %d quotes for '%s' (%d-%d):", quotes.size(), query, from + 1, to));
+        for (int i = from; i < to; i++) {
+            String value = quotes.get(i).getValue();
+            if (value.length() > MAX_QUOTE_LENGTH) {
+                value = value.substring(0, MAX_QUOTE_LENGTH - 3) + "...";
+            }
+            sb.append("\n\n").append(i + 1).append(". ").append(value);
+        }
+        if (pageNumber < pages) {
+            sb.append("QUICK_REPLIES: More...=SEARCH_MORE_").append(cursorId).append("_").append(pageNumber + 1);
         }
+        return sb.toString();
     }
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.rivescript.macro;
+
+import com.rivescript.RiveScript;
+import com.rivescript.macro.Subroutine;
+import io.tronalddump.app.facebook.messenger.broadcast.Subscriber;
+import io.tronalddump.app.facebook.messenger.broadcast.SubscriberStore;
+import io.tronalddump.app.facebook.messenger.callback.MessagingEvent;
+import io.tronalddump.app.facebook.messenger.jfr.Events;
+
+import java.util.logging.Logger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * RiveScript {@link Subroutine} for subscribing to or unsubscribing from the quote of the day.
+ *
+ * @author Marcel Overdijk
+ */
+public class SubscriptionMacro implements Subroutine {
+
+    private static final Logger logger = Logger.getLogger(SubscriptionMacro.class.getName());
+
+    private final SubscriberStore subscriberStore;
+    private final boolean subscribe;
+
+    public SubscriptionMacro(final SubscriberStore subscriberStore, final boolean subscribe) {
+        this.subscriberStore = requireNonNull(subscriberStore, "'subscriberStore' must not be null");
+        this.subscribe = subscribe;
+    }
+
+    @Override
+    public String call(RiveScript rivescript, String[] args) {
+        try (Events.Scope jfrEvent = Events.macroCall(subscribe ? "subscribe" : "unsubscribe", args)) {
+            String output = doCall(rivescript);
+            jfrEvent.result(output);
+            return output;
+        }
+    }
+
+    private String doCall(RiveScript rivescript) {
+        MessagingEvent event = MessagingEvent.current();
+        String senderId = event != null ? event.getSenderId() : rivescript.currentUser();
+        String pageId = event != null ? event.getPageId() : null;
+        if (subscribe) {
+            logger.info("Subscribing to quote of the day: " + senderId);
+            if (subscriberStore.subscribe(new Subscriber(senderId, pageId))) {
+                return "Tremendous! You'll get the quote of the day, every day. Type 'unsubscribe' to stop.";
+            }
+            return "You are already subscribed to the quote of the day. Believe me.";
+        } else {
+            logger.info("Unsubscribing from quote of the day: " + senderId);
+            if (subscriberStore.unsubscribe(senderId)) {
+                return "Sad! You will no longer get the quote of the day.";
+            }
+            return "You are not subscribed to the quote of the day. Type 'subscribe' to get one every day.";
+        }
+    }
+}
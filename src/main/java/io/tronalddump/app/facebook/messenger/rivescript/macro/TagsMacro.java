@@ -19,6 +19,7 @@ package io.tronalddump.app.facebook.messenger.rivescript.macro;
 import com.rivescript.RiveScript;
 import com.rivescript.macro.Subroutine;
 import io.tronalddump.app.facebook.messenger.cache.TagsCache;
+import io.tronalddump.app.facebook.messenger.jfr.Events;
 
 import java.util.List;
 
@@ -41,6 +42,14 @@ public class TagsMacro implements Subroutine {
 
     @Override
     public String call(RiveScript rivescript, String[] args) {
+        try (Events.Scope jfrEvent = Events.macroCall("tags", args)) {
+            String output = doCall(args);
+            jfrEvent.result(output);
+            return output;
+        }
+    }
+
+    private String doCall(String[] args) {
         int pageNumber = 1;
         try {
             pageNumber = Integer.parseInt(args[0]);
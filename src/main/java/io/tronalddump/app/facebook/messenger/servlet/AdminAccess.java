@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.servlet;
+
+import com.google.appengine.api.utils.SystemProperty;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Access check of the admin servlets.
+ * <p>
+ * On App Engine {@code /admin/*} is restricted to admins (and cron) in {@code web.xml}, so every request that gets
+ * here is allowed. Elsewhere the {@code X-Admin-Token} header must match the {@code admin.token} system property;
+ * without one all requests are refused.
+ *
+ * @author Marcel Overdijk
+ */
+public final class AdminAccess {
+
+    public static final String TOKEN_HEADER = "X-Admin-Token";
+
+    private static final Logger logger = Logger.getLogger(AdminAccess.class.getName());
+
+    private AdminAccess() {
+    }
+
+    /**
+     * Returns whether the given request is allowed, and answers it with {@code 403 Forbidden} if not.
+     */
+    public static boolean check(HttpServletRequest req, HttpServletResponse resp) {
+        if (SystemProperty.environment.value() != null) {
+            return true;
+        }
+        String adminToken = System.getProperty("admin.token");
+        if (adminToken == null || adminToken.isEmpty()) {
+            logger.warning("Refusing admin request as no admin.token is configured");
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return false;
+        }
+        String token = req.getHeader(TOKEN_HEADER);
+        if (token == null || !MessageDigest.isEqual(adminToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return false;
+        }
+        return true;
+    }
+}
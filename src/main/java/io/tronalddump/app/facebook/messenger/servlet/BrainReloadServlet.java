@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.servlet;
+
+import com.google.inject.Inject;
+import io.tronalddump.app.facebook.messenger.rivescript.Brain;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Admin servlet that reloads the RiveScript {@link Brain}.
+ * <p>
+ * Access is checked by {@link AdminAccess}.
+ *
+ * @author Marcel Overdijk
+ */
+public class BrainReloadServlet extends HttpServlet {
+
+    private static final Logger logger = Logger.getLogger(BrainReloadServlet.class.getName());
+
+    private final Brain brain;
+
+    @Inject
+    public BrainReloadServlet(final Brain brain) {
+        this.brain = requireNonNull(brain, "'brain' must not be null");
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!AdminAccess.check(req, resp)) {
+            return;
+        }
+        try {
+            brain.reload();
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.getWriter().write("Brain reloaded");
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Brain reload failed, keeping current brain:", e);
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            resp.getWriter().write("Brain reload failed, keeping current brain: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.servlet;
+
+import com.google.inject.Inject;
+import io.tronalddump.app.facebook.messenger.broadcast.QuoteOfTheDayBroadcaster;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Admin servlet that starts or resumes today's quote of the day broadcast; called from {@code cron.xml}.
+ * <p>
+ * The broadcast id is the current UTC date, so repeated calls on the same day resume an interrupted broadcast and
+ * are no-ops once it is done. A run stops after {@code broadcast.max_duration} millis (default 9 minutes, within App
+ * Engine's cron request deadline). Access is checked by {@link AdminAccess}.
+ *
+ * @author Marcel Overdijk
+ */
+public class BroadcastServlet extends HttpServlet {
+
+    private final QuoteOfTheDayBroadcaster broadcaster;
+
+    @Inject
+    public BroadcastServlet(final QuoteOfTheDayBroadcaster broadcaster) {
+        this.broadcaster = requireNonNull(broadcaster, "'broadcaster' must not be null");
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!AdminAccess.check(req, resp)) {
+            return;
+        }
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String broadcastId = dateFormat.format(new Date());
+        long deadline = System.currentTimeMillis() + Long.getLong("broadcast.max_duration", TimeUnit.MINUTES.toMillis(9));
+        QuoteOfTheDayBroadcaster.Report report = broadcaster.broadcast(broadcastId, deadline);
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("text/plain");
+        resp.getWriter().write(report != null ? report.toString() : "Broadcast " + broadcastId + " is already in progress");
+    }
+}
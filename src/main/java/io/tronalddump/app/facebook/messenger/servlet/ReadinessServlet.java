@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.servlet;
+
+import com.google.inject.Inject;
+import io.tronalddump.app.facebook.messenger.health.ReadinessMonitor;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Servlet for readiness probes, answering {@code 200 OK} when the instance is ready for traffic and
+ * {@code 503 Service Unavailable} when it is not, with the {@link ReadinessMonitor.Snapshot} as JSON.
+ *
+ * @author Marcel Overdijk
+ */
+public class ReadinessServlet extends HttpServlet {
+
+    private final ReadinessMonitor readinessMonitor;
+
+    @Inject
+    public ReadinessServlet(final ReadinessMonitor readinessMonitor) {
+        this.readinessMonitor = requireNonNull(readinessMonitor, "'readinessMonitor' must not be null");
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        ReadinessMonitor.Snapshot snapshot = readinessMonitor.getSnapshot();
+        resp.setStatus(snapshot.isReady() ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        resp.setContentType("application/json");
+        resp.setHeader("Cache-Control", "no-store");
+        resp.setContentLength(snapshot.getJson().length);
+        resp.getOutputStream().write(snapshot.getJson());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.servlet;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.marsbits.restfbmessenger.webhook.WebhookServlet;
+import io.tronalddump.app.facebook.messenger.callback.MessagingEvent;
+import io.tronalddump.app.facebook.messenger.callback.PageMessengers;
+import io.tronalddump.app.facebook.messenger.callback.TronaldDumpCallbackHandler;
+import io.tronalddump.app.facebook.messenger.trace.Span;
+import io.tronalddump.app.facebook.messenger.trace.Tracer;
+import io.tronalddump.app.facebook.messenger.webhook.SignatureVerifier;
+import io.tronalddump.app.facebook.messenger.webhook.WebhookParser;
+import io.tronalddump.app.facebook.messenger.webhook.WebhookRecorder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link WebhookServlet} that verifies and parses callbacks itself.
+ * <p>
+ * Callbacks without a {@code Content-Length} or with a body larger than {@code maxBodySize} bytes are rejected
+ * before the body is read, and callbacks with a missing, malformed or invalid {@code X-Hub-Signature} are rejected
+ * before any JSON is parsed. Valid callbacks that are not valid JSON are rejected as bad requests; others are parsed with the streaming {@link WebhookParser} and handed to the
+ * {@link TronaldDumpCallbackHandler} as events, to be replied to with the messenger of the page they were sent to.
+ * Verification requests are handled by the {@link WebhookServlet}.
+ * <p>
+ * When a {@link WebhookRecorder} is given, the events and timing of every valid callback are recorded for replay.
+ *
+ * @author Marcel Overdijk
+ */
+public class TronaldDumpWebhookServlet extends WebhookServlet {
+
+    public static final int DEFAULT_MAX_BODY_SIZE = 1024 * 1024;
+
+    private static final Logger logger = Logger.getLogger(TronaldDumpWebhookServlet.class.getName());
+
+    private final PageMessengers messengers;
+    private final TronaldDumpCallbackHandler callbackHandler;
+    private final SignatureVerifier signatureVerifier;
+    private final WebhookRecorder recorder;
+    private final int maxBodySize;
+    private final WebhookParser parser = new WebhookParser();
+
+    public TronaldDumpWebhookServlet(final PageMessengers messengers, final TronaldDumpCallbackHandler callbackHandler, final SignatureVerifier signatureVerifier) {
+        this(messengers, callbackHandler, signatureVerifier, null, DEFAULT_MAX_BODY_SIZE);
+    }
+
+    public TronaldDumpWebhookServlet(final PageMessengers messengers, final TronaldDumpCallbackHandler callbackHandler, final SignatureVerifier signatureVerifier, final WebhookRecorder recorder, final int maxBodySize) {
+        super(requireNonNull(messengers, "'messengers' must not be null").getDefault());
+        this.messengers = messengers;
+        this.callbackHandler = requireNonNull(callbackHandler, "'callbackHandler' must not be null");
+        this.signatureVerifier = requireNonNull(signatureVerifier, "'signatureVerifier' must not be null");
+        this.recorder = recorder;
+        this.maxBodySize = maxBodySize;
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        try (Span trace = Tracer.startTrace("POST /webhook")) {
+            int contentLength = req.getContentLength();
+            if (contentLength < 0) {
+                logger.warning("Ignoring callback without Content-Length");
+                trace.tag("http.status_code", "411");
+                resp.setStatus(HttpServletResponse.SC_LENGTH_REQUIRED);
+                return;
+            }
+            if (contentLength > maxBodySize) {
+                logger.warning(format("Ignoring callback of %d bytes", contentLength));
+                trace.tag("http.status_code", "413");
+                resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                return;
+            }
+            String signature = req.getHeader(SignatureVerifier.SIGNATURE_HEADER);
+            byte[] body;
+            try (Span span = Tracer.startSpan("verify signature")) {
+                body = signatureVerifier.readVerified(req.getInputStream(), contentLength, signature);
+            }
+            if (body == null) {
+                logger.warning(format("Ignoring callback with invalid signature: %s", signature));
+                trace.tag("http.status_code", "403");
+                resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+                return;
+            }
+            List<MessagingEvent> events;
+            try (Span span = Tracer.startSpan("parse")) {
+                events = parser.parse(new ByteArrayInputStream(body));
+            } catch (JsonProcessingException e) {
+                logger.warning(format("Ignoring callback with invalid JSON: %s", e.getOriginalMessage()));
+                trace.tag("http.status_code", "400");
+                resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            trace.tag("events", String.valueOf(events.size()));
+            long timestamp = System.currentTimeMillis();
+            long startNanos = System.nanoTime();
+            callbackHandler.onEvents(messengers, events);
+            if (recorder != null) {
+                recorder.record(timestamp, (System.nanoTime() - startNanos) / 1000, events);
+            }
+            resp.setStatus(HttpServletResponse.SC_OK);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.trace;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A timed step of a trace, to be used with try-with-resources. Spans of unsampled traces are a shared no-op
+ * instance.
+ *
+ * @author Marcel Overdijk
+ */
+public class Span implements AutoCloseable {
+
+    static final Span NOOP = new Span(null, null, 0, null);
+
+    final Trace trace;
+    final Span parent;
+    final long id;
+    final String name;
+    final long timestampMicros;
+    final long startNanos;
+    final Map<String, String> tags;
+    long durationMicros;
+
+    private Span previous;
+
+    Span(Trace trace, Span parent, long id, String name) {
+        this.trace = trace;
+        this.parent = parent;
+        this.id = id;
+        this.name = name;
+        this.timestampMicros = trace != null ? System.currentTimeMillis() * 1000 : 0;
+        this.startNanos = trace != null ? System.nanoTime() : 0;
+        this.tags = trace != null ? new LinkedHashMap<>(4) : null;
+    }
+
+    public boolean isSampled() {
+        return trace != null;
+    }
+
+    public Span tag(String key, String value) {
+        if (trace != null && value != null) {
+            tags.put(key, value);
+        }
+        return this;
+    }
+
+    Span makeCurrent() {
+        previous = Tracer.current.get();
+        Tracer.current.set(this);
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (trace == null) {
+            return;
+        }
+        durationMicros = Math.max(1, (System.nanoTime() - startNanos) / 1000);
+        if (previous == null) {
+            Tracer.current.remove();
+        } else {
+            Tracer.current.set(previous);
+        }
+        trace.finish(this);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.trace;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes finished traces to a rolling file, one trace per line as a JSON array of
+ * <a href="https://zipkin.io/zipkin-api/#/default/post_spans">Zipkin v2 spans</a>, so a file can be posted to a
+ * Zipkin server (or loaded in its UI) line by line.
+ * <p>
+ * When the file exceeds the maximum size it is rolled to {@code <file>.1}, {@code <file>.2}, etc., keeping at most
+ * the configured number of rolled files.
+ *
+ * @author Marcel Overdijk
+ */
+public class SpanExporter {
+
+    private static final Logger logger = Logger.getLogger(SpanExporter.class.getName());
+
+    private static final String SERVICE_NAME = "tronald-dump-fb-messenger";
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final File file;
+    private final long maxFileSize;
+    private final int maxFiles;
+
+    public SpanExporter(final File file, final long maxFileSize, final int maxFiles) {
+        this.file = requireNonNull(file, "'file' must not be null");
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+    }
+
+    synchronized void export(Trace trace, List<Span> spans) {
+        try {
+            if (file.length() > maxFileSize) {
+                roll();
+            }
+            try (OutputStream out = new FileOutputStream(file, true)) {
+                JsonGenerator json = jsonFactory.createGenerator(out);
+                json.writeStartArray();
+                String traceId = format("%016x%016x", trace.traceIdHigh, trace.traceIdLow);
+                for (Span span : spans) {
+                    json.writeStartObject();
+                    json.writeStringField("traceId", traceId);
+                    json.writeStringField("id", format("%016x", span.id));
+                    if (span.parent != null) {
+                        json.writeStringField("parentId", format("%016x", span.parent.id));
+                    }
+                    json.writeStringField("name", span.name);
+                    json.writeNumberField("timestamp", span.timestampMicros);
+                    json.writeNumberField("duration", span.durationMicros);
+                    json.writeObjectFieldStart("localEndpoint");
+                    json.writeStringField("serviceName", SERVICE_NAME);
+                    json.writeEndObject();
+                    if (!span.tags.isEmpty()) {
+                        json.writeObjectFieldStart("tags");
+                        for (Map.Entry<String, String> tag : span.tags.entrySet()) {
+                            json.writeStringField(tag.getKey(), tag.getValue());
+                        }
+                        json.writeEndObject();
+                    }
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+                json.writeRaw('\n');
+                json.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Exporting trace failed:", e);
+        }
+    }
+
+    private void roll() {
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            File rolled = new File(file.getPath() + "." + i);
+            if (rolled.exists()) {
+                File target = new File(file.getPath() + "." + (i + 1));
+                target.delete();
+                rolled.renameTo(target);
+            }
+        }
+        File first = new File(file.getPath() + ".1");
+        first.delete();
+        if (maxFiles > 0) {
+            file.renameTo(first);
+        } else {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A sampled trace collecting its finished spans; the trace is exported when its root span finishes.
+ *
+ * @author Marcel Overdijk
+ */
+class Trace {
+
+    final long traceIdHigh;
+    final long traceIdLow;
+    private final SpanExporter exporter;
+    private final List<Span> spans = new ArrayList<>();
+
+    Trace(SpanExporter exporter) {
+        this.traceIdHigh = ThreadLocalRandom.current().nextLong();
+        this.traceIdLow = ThreadLocalRandom.current().nextLong();
+        this.exporter = exporter;
+    }
+
+    long nextSpanId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    void finish(Span span) {
+        List<Span> finished = null;
+        synchronized (spans) {
+            spans.add(span);
+            if (span.parent == null) {
+                finished = new ArrayList<>(spans);
+            }
+        }
+        if (finished != null) {
+            exporter.export(this, finished);
+        }
+    }
+}
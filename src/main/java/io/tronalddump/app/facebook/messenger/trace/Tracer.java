@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.trace;
+
+import io.tronalddump.app.facebook.messenger.webhook.Pseudonymizer;
+
+import java.io.File;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sampled tracing of webhook requests through the message pipeline.
+ * <p>
+ * A trace is started per webhook request with probability {@code trace.sample_rate} (default {@code 0}, disabled)
+ * and written by the {@link SpanExporter} to the file given by {@code trace.file} (default
+ * {@code tronald-dump-traces.json} in {@code java.io.tmpdir}), rolled at {@code trace.max_file_size} bytes (default
+ * 10 MB) keeping {@code trace.max_files} rolled files (default 5).
+ * <p>
+ * Sender ids are only traced as {@link #pseudonymize(String) pseudonyms} salted with {@code trace.salt}, or with a
+ * random salt per process if it is not set, so pseudonyms then only match within the traces of one instance.
+ * <p>
+ * The current span is kept in a thread local; when no trace is sampled {@link #startSpan(String)} is a thread local
+ * lookup returning a shared no-op span. Use {@link #wrap(Runnable)} to continue the current trace on another thread.
+ *
+ * @author Marcel Overdijk
+ */
+public final class Tracer {
+
+    static final ThreadLocal<Span> current = new ThreadLocal<>();
+
+    private static volatile double sampleRate = Double.parseDouble(System.getProperty("trace.sample_rate", "0"));
+    private static volatile SpanExporter exporter = new SpanExporter(
+            new File(System.getProperty("trace.file",
+                    new File(System.getProperty("java.io.tmpdir"), "tronald-dump-traces.json").getPath())),
+            Long.parseLong(System.getProperty("trace.max_file_size", "10485760")),
+            Integer.parseInt(System.getProperty("trace.max_files", "5")));
+    private static volatile Pseudonymizer pseudonymizer = new Pseudonymizer(
+            System.getProperty("trace.salt", UUID.randomUUID().toString()));
+
+    private Tracer() {
+    }
+
+    /**
+     * Replaces the sample rate and exporter, e.g. for tests.
+     */
+    public static void configure(double sampleRate, SpanExporter exporter) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("'sampleRate' must be between 0 and 1");
+        }
+        Tracer.exporter = exporter;
+        Tracer.sampleRate = sampleRate;
+    }
+
+    /**
+     * Replaces the sample rate, exporter and the salt of sender id pseudonyms, e.g. for tests.
+     */
+    public static void configure(double sampleRate, SpanExporter exporter, String salt) {
+        Tracer.pseudonymizer = new Pseudonymizer(salt);
+        configure(sampleRate, exporter);
+    }
+
+    /**
+     * Returns the pseudonym to trace the given sender id as.
+     */
+    public static String pseudonymize(String senderId) {
+        return pseudonymizer.pseudonymize(senderId);
+    }
+
+    /**
+     * Starts a new trace on the current thread if it is sampled, otherwise returns a no-op span.
+     */
+    public static Span startTrace(String name) {
+        double rate = sampleRate;
+        if (rate <= 0 || (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+            return Span.NOOP;
+        }
+        Trace trace = new Trace(exporter);
+        return new Span(trace, null, trace.nextSpanId(), name).makeCurrent();
+    }
+
+    /**
+     * Starts a child span of the current span, or returns a no-op span when the current thread is not traced.
+     */
+    public static Span startSpan(String name) {
+        Span parent = current.get();
+        if (parent == null) {
+            return Span.NOOP;
+        }
+        return new Span(parent.trace, parent, parent.trace.nextSpanId(), name).makeCurrent();
+    }
+
+    /**
+     * Returns a task continuing the current trace on the thread running it, or the task itself when not traced.
+     */
+    public static Runnable wrap(Runnable task) {
+        Span span = current.get();
+        if (span == null) {
+            return task;
+        }
+        return () -> {
+            Span previous = current.get();
+            current.set(span);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) {
+                    current.remove();
+                } else {
+                    current.set(previous);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.webhook;
+
+import io.tronalddump.app.facebook.messenger.callback.MessagingEvent;
+
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A webhook request read from a {@link WebhookRecorder} log.
+ *
+ * @author Marcel Overdijk
+ */
+public final class RecordedRequest {
+
+    private final long timestamp;
+    private final long durationMicros;
+    private final List<MessagingEvent> events;
+
+    public RecordedRequest(final long timestamp, final long durationMicros, final List<MessagingEvent> events) {
+        this.timestamp = timestamp;
+        this.durationMicros = durationMicros;
+        this.events = requireNonNull(events, "'events' must not be null");
+    }
+
+    /**
+     * Returns the time the request was received, in epoch millis.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns how long handling the request took when it was recorded.
+     */
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+
+    public List<MessagingEvent> getEvents() {
+        return events;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.webhook;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Verifies the {@code X-Hub-Signature} of webhook callbacks.
+ * <p>
+ * {@code Mac.getInstance} and {@code Mac.init} are expensive, so every thread keeps its own initialised {@link Mac}
+ * which is only reset between requests. The body is digested while it is read, and no byte of it is returned
+ * unless the signature is valid.
+ * <p>
+ * Without an app secret verification is disabled and every body is returned as is.
+ *
+ * @author Marcel Overdijk
+ */
+public class SignatureVerifier {
+
+    public static final String SIGNATURE_HEADER = "X-Hub-Signature";
+
+    private static final String SIGNATURE_PREFIX = "sha1=";
+    private static final String HMAC_ALGORITHM = "HmacSHA1";
+    private static final int SIGNATURE_LENGTH = SIGNATURE_PREFIX.length() + 40;
+
+    private final ThreadLocal<Mac> macs;
+
+    public SignatureVerifier(final String appSecret) {
+        if (appSecret == null) {
+            this.macs = null;
+        } else {
+            SecretKeySpec key = new SecretKeySpec(appSecret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+            this.macs = ThreadLocal.withInitial(() -> {
+                try {
+                    Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                    mac.init(key);
+                    return mac;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+    }
+
+    public boolean isEnabled() {
+        return macs != null;
+    }
+
+    /**
+     * Returns whether the given signature header has the {@code sha1=<40 hex digits>} form, so malformed requests
+     * can be rejected without reading the body.
+     */
+    public boolean isWellFormed(String signature) {
+        if (signature == null || signature.length() != SIGNATURE_LENGTH || !signature.startsWith(SIGNATURE_PREFIX)) {
+            return false;
+        }
+        for (int i = SIGNATURE_PREFIX.length(); i < SIGNATURE_LENGTH; i++) {
+            if (Character.digit(signature.charAt(i), 16) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the given body, digesting it as it is read, and returns it only if it matches the given signature.
+     *
+     * @param in the body
+     * @param contentLength the expected length of the body, or {@code -1} if unknown
+     * @param signature the {@code X-Hub-Signature} header
+     * @return the body, or {@code null} if the signature is invalid
+     */
+    public byte[] readVerified(InputStream in, int contentLength, String signature) throws IOException {
+        if (!isEnabled()) {
+            return read(in, contentLength);
+        }
+        if (!isWellFormed(signature)) {
+            return null;
+        }
+        Mac mac = macs.get();
+        mac.reset();
+        byte[] body = read(new MacInputStream(in, mac), contentLength);
+        return isDigestValid(mac.doFinal(), signature) ? body : null;
+    }
+
+    private boolean isDigestValid(byte[] digest, String signature) {
+        byte[] expected = new byte[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            expected[i * 2] = (byte) Character.forDigit((digest[i] >> 4) & 0xf, 16);
+            expected[i * 2 + 1] = (byte) Character.forDigit(digest[i] & 0xf, 16);
+        }
+        byte[] actual = signature.substring(SIGNATURE_PREFIX.length()).toLowerCase().getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private byte[] read(InputStream in, int contentLength) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(contentLength > 0 ? contentLength : 1024);
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.webhook;
+
+import io.tronalddump.app.facebook.messenger.callback.MessagingEvent;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Reads the requests recorded by a {@link WebhookRecorder}. A truncated last request, e.g. of a recording that was
+ * killed, is ignored.
+ *
+ * @author Marcel Overdijk
+ */
+public class WebhookLogReader implements AutoCloseable {
+
+    private final DataInputStream in;
+
+    public WebhookLogReader(final File file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        int magic = in.readInt();
+        short version = in.readShort();
+        if (magic != WebhookRecorder.MAGIC || version != WebhookRecorder.VERSION) {
+            in.close();
+            throw new IOException(format("Not a webhook log (version %d): %s", WebhookRecorder.VERSION, file));
+        }
+    }
+
+    /**
+     * Returns the next request, or {@code null} at the end of the log.
+     */
+    public RecordedRequest next() throws IOException {
+        try {
+            long timestamp = in.readLong();
+            long durationMicros = in.readInt();
+            int count = in.readUnsignedShort();
+            List<MessagingEvent> events = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                MessagingEvent.Type type = MessagingEvent.Type.values()[in.readByte()];
+                String pageId = readString();
+                String senderId = readString();
+                String payload = readString();
+                events.add(new MessagingEvent(pageId, senderId, type, payload));
+            }
+            return new RecordedRequest(timestamp, durationMicros, events);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads all remaining requests.
+     */
+    public List<RecordedRequest> readAll() throws IOException {
+        List<RecordedRequest> requests = new ArrayList<>();
+        RecordedRequest request;
+        while ((request = next()) != null) {
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private String readString() throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.webhook;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.tronalddump.app.facebook.messenger.callback.MessagingEvent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser for webhook callbacks.
+ * <p>
+ * Only the page id, sender id, message text, quick reply payload and postback payload are read; all other fields
+ * are skipped without being bound to objects. The input stream is not closed.
+ *
+ * @author Marcel Overdijk
+ */
+public class WebhookParser {
+
+    private final JsonFactory jsonFactory = new JsonFactory()
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    public List<MessagingEvent> parse(InputStream in) throws IOException {
+        List<MessagingEvent> events = new ArrayList<>();
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && "entry".equals(field)) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        parseEntry(parser, events);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return events;
+    }
+
+    private void parseEntry(JsonParser parser, List<MessagingEvent> events) throws IOException {
+        // The entry id may come after the messaging items, so the page id is only known at the end of the entry.
+        String pageId = null;
+        List<Item> items = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("id".equals(field)) {
+                pageId = parser.getValueAsString();
+            } else if ("messaging".equals(field) && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    items.add(parseMessaging(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        for (Item item : items) {
+            MessagingEvent event = item.toEvent(pageId != null ? pageId : item.recipientId);
+            if (event != null) {
+                events.add(event);
+            }
+        }
+    }
+
+    private Item parseMessaging(JsonParser parser) throws IOException {
+        Item item = new Item();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+            } else if ("sender".equals(field)) {
+                item.senderId = parseId(parser);
+            } else if ("recipient".equals(field)) {
+                item.recipientId = parseId(parser);
+            } else if ("message".equals(field)) {
+                parseMessage(parser, item);
+            } else if ("postback".equals(field)) {
+                item.postback = true;
+                item.postbackPayload = parsePayload(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return item;
+    }
+
+    private void parseMessage(JsonParser parser, Item item) throws IOException {
+        item.message = true;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("text".equals(field)) {
+                item.text = parser.getValueAsString();
+            } else if ("is_echo".equals(field)) {
+                item.echo = parser.getValueAsBoolean();
+            } else if ("quick_reply".equals(field) && token == JsonToken.START_OBJECT) {
+                item.quickReplyPayload = parsePayload(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private String parseId(JsonParser parser) throws IOException {
+        return parseField(parser, "id");
+    }
+
+    private String parsePayload(JsonParser parser) throws IOException {
+        return parseField(parser, "payload");
+    }
+
+    private String parseField(JsonParser parser, String name) throws IOException {
+        String value = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (name.equals(field)) {
+                value = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
+
+    private static class Item {
+
+        private String senderId;
+        private String recipientId;
+        private boolean message;
+        private boolean echo;
+        private String text;
+        private String quickReplyPayload;
+        private boolean postback;
+        private String postbackPayload;
+
+        private MessagingEvent toEvent(String pageId) {
+            if (senderId == null) {
+                return null;
+            }
+            if (message && !echo) {
+                if (quickReplyPayload != null) {
+                    return new MessagingEvent(pageId, senderId, MessagingEvent.Type.QUICK_REPLY, quickReplyPayload);
+                }
+                return new MessagingEvent(pageId, senderId, MessagingEvent.Type.MESSAGE, text);
+            }
+            if (postback) {
+                return new MessagingEvent(pageId, senderId, MessagingEvent.Type.POSTBACK, postbackPayload);
+            }
+            return null;
+        }
+    }
+}
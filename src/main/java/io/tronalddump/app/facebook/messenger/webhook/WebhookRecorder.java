@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.webhook;
+
+import io.tronalddump.app.facebook.messenger.callback.MessagingEvent;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Appends verified webhook requests to a compact binary log, to be replayed with {@link WebhookLogReader}.
+ * <p>
+ * Requests are recorded as their parsed events with the time they were received and how long handling them took.
+ * Sender ids are replaced by salted SHA-256 {@link Pseudonymizer pseudonyms} (stable as long as the salt is, so per
+ * sender ordering and fan-out are kept). Message texts are dropped unless {@code keepText} is set, in which case
+ * e-mail addresses and long digit sequences are masked in them. Postback and quick reply payloads are kept as is.
+ * <p>
+ * Log layout: {@code int} magic, {@code short} version, then per request a {@code long} timestamp (epoch millis),
+ * {@code int} duration (micros), {@code short} event count and per event a {@code byte} type followed by the page
+ * id, sender id and payload as optional UTF strings.
+ *
+ * @author Marcel Overdijk
+ */
+public class WebhookRecorder implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(WebhookRecorder.class.getName());
+
+    static final int MAGIC = 0x54445752;
+    static final short VERSION = 1;
+
+    private static final Pattern EMAIL_PATTERN = Pattern.compile("[\\w.+-]+@[\\w-]+(\\.[\\w-]+)+");
+    private static final Pattern DIGITS_PATTERN = Pattern.compile("\\d{5,}");
+
+    private final Pseudonymizer pseudonymizer;
+    private final boolean keepText;
+    private final DataOutputStream out;
+
+    public WebhookRecorder(final File file, final String salt) throws IOException {
+        this(file, salt, false);
+    }
+
+    public WebhookRecorder(final File file, final String salt, final boolean keepText) throws IOException {
+        requireNonNull(file, "'file' must not be null");
+        this.pseudonymizer = new Pseudonymizer(salt);
+        this.keepText = keepText;
+        boolean empty = !file.exists() || file.length() == 0;
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024));
+        if (empty) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.flush();
+        }
+    }
+
+    /**
+     * Records a request. Failures are logged, as recording must never fail the webhook.
+     */
+    public void record(long timestamp, long durationMicros, List<MessagingEvent> events) {
+        try {
+            synchronized (out) {
+                out.writeLong(timestamp);
+                out.writeInt((int) Math.min(Integer.MAX_VALUE, durationMicros));
+                out.writeShort(events.size());
+                for (MessagingEvent event : events) {
+                    out.writeByte(event.getType().ordinal());
+                    writeString(event.getPageId());
+                    writeString(pseudonymizer.pseudonymize(event.getSenderId()));
+                    writeString(event.getType() != MessagingEvent.Type.MESSAGE ? event.getPayload() : keepText ? mask(event.getPayload()) : null);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Recording webhook request failed:", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (out) {
+            out.close();
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String mask(String text) {
+        if (text == null) {
+            return null;
+        }
+        text = EMAIL_PATTERN.matcher(text).replaceAll("user@example.com");
+        return DIGITS_PATTERN.matcher(text).replaceAll("00000");
+    }
+}
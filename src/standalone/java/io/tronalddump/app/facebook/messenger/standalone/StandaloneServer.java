@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.tronalddump.app.facebook.messenger.standalone;
+
+import com.google.inject.servlet.GuiceFilter;
+import io.tronalddump.app.facebook.messenger.inject.TronaldDumpGuiceServletContextListener;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import javax.servlet.DispatcherType;
+import java.util.EnumSet;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Runs the application on an embedded Jetty server instead of App Engine.
+ * <p>
+ * The server is configured with the following system properties:
+ * <ul>
+ * <li>{@code server.port} - the HTTP port (default {@code 8080})</li>
+ * <li>{@code server.acceptors} - the number of acceptor threads (default {@code -1}, let Jetty decide)</li>
+ * <li>{@code server.selectors} - the number of selector threads (default {@code -1}, let Jetty decide)</li>
+ * <li>{@code server.accept_queue_size} - the accept queue size (default {@code 0}, use the OS default)</li>
+ * <li>{@code server.min_threads} - the minimum number of worker threads (default {@code 8})</li>
+ * <li>{@code server.max_threads} - the maximum number of worker threads (default {@code 200})</li>
+ * <li>{@code server.idle_timeout} - the idle timeout of worker threads in millis (default {@code 60000})</li>
+ * <li>{@code server.stop_timeout} - the time in millis to drain in-flight requests on shutdown (default {@code 30000})</li>
+ * </ul>
+ * The {@code facebook.*} properties are the same as for the App Engine deployment.
+ *
+ * @author Marcel Overdijk
+ */
+public class StandaloneServer {
+
+    private static final Logger logger = Logger.getLogger(StandaloneServer.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        long startTimestamp = System.currentTimeMillis();
+
+        QueuedThreadPool threadPool = new QueuedThreadPool(
+                Integer.getInteger("server.max_threads", 200),
+                Integer.getInteger("server.min_threads", 8),
+                Integer.getInteger("server.idle_timeout", 60000));
+        threadPool.setName("tronald-dump");
+
+        Server server = new Server(threadPool);
+        ServerConnector connector = new ServerConnector(server,
+                Integer.getInteger("server.acceptors", -1),
+                Integer.getInteger("server.selectors", -1));
+        connector.setPort(Integer.getInteger("server.port", 8080));
+        connector.setAcceptQueueSize(Integer.getInteger("server.accept_queue_size", 0));
+        server.addConnector(connector);
+
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+        context.addEventListener(new TronaldDumpGuiceServletContextListener());
+        context.addFilter(GuiceFilter.class, "/*", EnumSet.of(DispatcherType.REQUEST));
+
+        // The StatisticsHandler tracks in-flight requests so they can be drained on shutdown.
+        StatisticsHandler statisticsHandler = new StatisticsHandler();
+        statisticsHandler.setHandler(context);
+        server.setHandler(statisticsHandler);
+        server.setStopTimeout(Long.getLong("server.stop_timeout", 30000));
+        server.setStopAtShutdown(true);
+
+        server.start();
+        logger.info(format("Started on port %d in %d millis", connector.getLocalPort(), System.currentTimeMillis() - startTimestamp));
+        server.join();
+    }
+}
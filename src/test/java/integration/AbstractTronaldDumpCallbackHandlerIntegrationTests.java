@@ -100,6 +100,8 @@ public abstract class AbstractTronaldDumpCallbackHandlerIntegrationTests {
 		}
 		when(tagsCache.getTags()).thenReturn(tags);
 
+		when(tagsCache.resolveTag("tag1")).thenReturn("tag1");
+
 		when(tagsCache.getTagsPaged(6)).thenReturn(
 				ListUtils.partition(tags, 6));
 
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import io.tronalddump.app.facebook.messenger.servlet.AdminAccess;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Integration tests for {@link AdminAccess}.
+ *
+ * @author Marcel Overdijk
+ */
+public class AdminAccessIntegrationTests {
+
+    @After
+    public void tearDown() {
+        System.clearProperty("admin.token");
+    }
+
+    @Test
+    public void testRefusedWithoutConfiguredToken() {
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        assertThat(AdminAccess.check(createRequest(null), resp), is(false));
+        assertThat(AdminAccess.check(createRequest(""), resp), is(false));
+        verify(resp, times(2)).setStatus(HttpServletResponse.SC_FORBIDDEN);
+    }
+
+    @Test
+    public void testRefusedWithWrongToken() {
+        System.setProperty("admin.token", "secret");
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        assertThat(AdminAccess.check(createRequest(null), resp), is(false));
+        assertThat(AdminAccess.check(createRequest("secret2"), resp), is(false));
+        verify(resp, times(2)).setStatus(HttpServletResponse.SC_FORBIDDEN);
+    }
+
+    @Test
+    public void testAllowedWithMatchingToken() {
+        System.setProperty("admin.token", "secret");
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        assertThat(AdminAccess.check(createRequest("secret"), resp), is(true));
+        verify(resp, never()).setStatus(HttpServletResponse.SC_FORBIDDEN);
+    }
+
+    private HttpServletRequest createRequest(String token) {
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        when(req.getHeader(AdminAccess.TOKEN_HEADER)).thenReturn(token);
+        return req;
+    }
+}
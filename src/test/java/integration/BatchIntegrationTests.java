@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import com.restfb.types.send.IdMessageRecipient;
+import com.restfb.types.webhook.WebhookEntry;
+import com.restfb.types.webhook.WebhookObject;
+import com.restfb.types.webhook.messaging.MessagingItem;
+import io.tronalddump.app.facebook.messenger.callback.TronaldDumpCallbackHandler;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.Arrays;
+
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Integration tests for batched webhook callbacks of {@link TronaldDumpCallbackHandler}.
+ *
+ * @author Marcel Overdijk
+ */
+public class BatchIntegrationTests extends AbstractTronaldDumpCallbackHandlerIntegrationTests {
+
+    @Test
+    public void testSameSearchIsMadeOncePerBatch() {
+        onCallback(
+                createMessagingItemWithText("1", "search quote containing money"),
+                createMessagingItemWithText("2", "search quote containing money"),
+                createMessagingItemWithText("3", "find quote with money"));
+        verify(tronaldClient, times(1)).search("money");
+        String quote = "Money was never a big motivation for me, except as a way to keep score.";
+        verify(sendOperations).textMessage(eq(new IdMessageRecipient("1")), eq(quote));
+        verify(sendOperations).textMessage(eq(new IdMessageRecipient("2")), eq(quote));
+        verify(sendOperations).textMessage(eq(new IdMessageRecipient("3")), eq(quote));
+    }
+
+    @Test
+    public void testRandomQuotesAreNotSharedWithinBatch() {
+        onCallback(
+                createMessagingItemWithText("1", "tell me a quote"),
+                createMessagingItemWithText("1", "tell me another"),
+                createMessagingItemWithPostback("2", "RANDOM_QUOTE"));
+        verify(tronaldClient, times(3)).getRandomQuote();
+    }
+
+    @Test
+    public void testEventsOfSameSenderAreHandledInOrder() {
+        onCallback(
+                createMessagingItemWithText(senderId, "hi"),
+                createMessagingItemWithText(senderId, "search quote containing money"));
+        verify(sendOperations, times(2)).markSeen(eq(recipient));
+        InOrder inOrder = inOrder(sendOperations);
+        inOrder.verify(sendOperations).textMessage(eq(recipient), eq("Hi there!"));
+        inOrder.verify(sendOperations).textMessage(eq(recipient), eq("Money was never a big motivation for me, except as a way to keep score."));
+    }
+
+    private void onCallback(MessagingItem... messagingItems) {
+        WebhookEntry entry = new WebhookEntry();
+        entry.setId("page");
+        entry.setMessaging(Arrays.asList(messagingItems));
+        WebhookObject webhookObject = new WebhookObject();
+        webhookObject.setObject("page");
+        webhookObject.setEntryList(Arrays.asList(entry));
+        callbackHandler.onCallback(messenger, webhookObject);
+    }
+}
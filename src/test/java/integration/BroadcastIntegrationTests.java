@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import io.tronalddump.app.facebook.messenger.broadcast.BroadcastSender;
+import io.tronalddump.app.facebook.messenger.broadcast.Checkpoint;
+import io.tronalddump.app.facebook.messenger.broadcast.InMemorySubscriberStore;
+import io.tronalddump.app.facebook.messenger.broadcast.QuoteOfTheDayBroadcaster;
+import io.tronalddump.app.facebook.messenger.broadcast.Subscriber;
+import io.tronalddump.app.facebook.messenger.callback.FanOutExecutor;
+import io.tronalddump.client.Quote;
+import io.tronalddump.client.TronaldClient;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Integration tests for {@link QuoteOfTheDayBroadcaster}.
+ *
+ * @author Marcel Overdijk
+ */
+public class BroadcastIntegrationTests {
+
+    private InMemorySubscriberStore store;
+    private TronaldClient tronaldClient;
+    private BroadcastSender sender;
+    private QuoteOfTheDayBroadcaster broadcaster;
+
+    @Before
+    public void setUp() {
+        store = new InMemorySubscriberStore();
+        for (int i = 0; i < 25; i++) {
+            store.subscribe(new Subscriber("sender" + i, null));
+        }
+        Quote quote = mock(Quote.class);
+        when(quote.getValue()).thenReturn("Crooked Hillary!");
+        tronaldClient = mock(TronaldClient.class);
+        when(tronaldClient.getRandomQuote()).thenReturn(quote);
+        sender = mock(BroadcastSender.class);
+        broadcaster = new QuoteOfTheDayBroadcaster(store, sender, tronaldClient, new FanOutExecutor(4), 10, 4, 10000);
+    }
+
+    @Test
+    public void testQuoteIsSentToAllSubscribersOnce() {
+        QuoteOfTheDayBroadcaster.Report report = broadcaster.broadcast("2017-03-01", Long.MAX_VALUE);
+        assertThat(report.getSent(), is(25L));
+        assertThat(report.getCheckpoint().isDone(), is(true));
+        for (int i = 0; i < 25; i++) {
+            verify(sender).send(isNull(String.class), eq("sender" + i), eq("Quote of the day: Crooked Hillary!"));
+        }
+        report = broadcaster.broadcast("2017-03-01", Long.MAX_VALUE);
+        assertThat(report.getSent(), is(0L));
+        verify(sender, times(25)).send(isNull(String.class), anyString(), anyString());
+    }
+
+    @Test
+    public void testInterruptedBroadcastIsResumed() {
+        QuoteOfTheDayBroadcaster.Report report = broadcaster.broadcast("2017-03-01", 0);
+        assertThat(report.getSent(), is(0L));
+        assertThat(report.getCheckpoint().isDone(), is(false));
+        assertThat(report.getCheckpoint().getCursor(), is(nullValue()));
+        report = broadcaster.broadcast("2017-03-01", Long.MAX_VALUE);
+        assertThat(report.getSent(), is(25L));
+        verify(tronaldClient, times(1)).getRandomQuote();
+    }
+
+    @Test
+    public void testFailedSendsAreCounted() {
+        doThrow(new IllegalStateException("blocked")).when(sender).send(isNull(String.class), eq("sender3"), anyString());
+        QuoteOfTheDayBroadcaster.Report report = broadcaster.broadcast("2017-03-01", Long.MAX_VALUE);
+        assertThat(report.getSent(), is(24L));
+        assertThat(report.getFailed(), is(1L));
+        assertThat(report.getCheckpoint().isDone(), is(true));
+    }
+
+    @Test
+    public void testCheckpointIsOnlySavedByLeaseHolder() {
+        Checkpoint expired = store.acquireCheckpoint("2017-03-01", 0);
+        Checkpoint current = store.acquireCheckpoint("2017-03-01", 60000);
+        assertThat(store.saveCheckpoint(expired, 60000), is(false));
+        assertThat(store.saveCheckpoint(current, 0), is(true));
+        QuoteOfTheDayBroadcaster.Report report = broadcaster.broadcast("2017-03-01", Long.MAX_VALUE);
+        assertThat(report.getSent(), is(25L));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import com.restfb.exception.FacebookGraphException;
+import com.restfb.exception.FacebookNetworkException;
+import io.tronalddump.app.facebook.messenger.limit.ConcurrencyLimiter;
+import io.tronalddump.app.facebook.messenger.limit.ConcurrencyLimiter.Permit;
+import io.tronalddump.app.facebook.messenger.limit.ConcurrencyLimiter.Priority;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Integration tests for {@link ConcurrencyLimiter}.
+ *
+ * @author Marcel Overdijk
+ */
+public class ConcurrencyLimiterIntegrationTests {
+
+    @Test
+    public void testLowPriorityIsShedFirst() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10, 1000, 0.5);
+        List<Permit> permits = acquire(limiter, Priority.LOW, 7);
+        assertThat(limiter.tryAcquire(Priority.LOW), is(nullValue()));
+        permits.addAll(acquire(limiter, Priority.MEDIUM, 2));
+        assertThat(limiter.tryAcquire(Priority.MEDIUM), is(nullValue()));
+        assertThat(limiter.tryAcquire(Priority.HIGH), is(notNullValue()));
+        assertThat(limiter.tryAcquire(Priority.HIGH), is(nullValue()));
+        assertThat(limiter.getInFlight(), is(10));
+    }
+
+    @Test
+    public void testLimitDecreasesOnFailure() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 10, 1000, 0.5);
+        limiter.tryAcquire(Priority.HIGH).onFailure();
+        assertThat(limiter.getLimit(), is(5));
+        limiter.tryAcquire(Priority.HIGH).onFailure();
+        limiter.tryAcquire(Priority.HIGH).onFailure();
+        assertThat(limiter.getLimit(), is(2));
+        assertThat(limiter.getInFlight(), is(0));
+    }
+
+    @Test
+    public void testLimitOnlyDecreasesOnOverload() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 10, 1000, 0.5);
+        limiter.tryAcquire(Priority.HIGH).onFailure(createGraphException(551, 400, false));
+        limiter.tryAcquire(Priority.HIGH).onFailure(new IllegalStateException("No reply"));
+        assertThat(limiter.getLimit(), is(10));
+        limiter.tryAcquire(Priority.HIGH).onFailure(createGraphException(613, 400, false));
+        assertThat(limiter.getLimit(), is(5));
+        limiter.tryAcquire(Priority.HIGH).onFailure(new UncheckedIOException(new SocketTimeoutException("Read timed out")));
+        assertThat(limiter.getLimit(), is(2));
+        assertThat(limiter.getInFlight(), is(0));
+    }
+
+    @Test
+    public void testOverloadErrors() {
+        assertThat(ConcurrencyLimiter.isOverload(createGraphException(2, 500, false)), is(true));
+        assertThat(ConcurrencyLimiter.isOverload(createGraphException(100, 400, true)), is(true));
+        assertThat(ConcurrencyLimiter.isOverload(new FacebookNetworkException("Facebook request failed", 503)), is(true));
+        assertThat(ConcurrencyLimiter.isOverload(createGraphException(10, 403, false)), is(false));
+        assertThat(ConcurrencyLimiter.isOverload(new RuntimeException(new FileNotFoundException("/quote/random"))), is(false));
+    }
+
+    @Test
+    public void testLimitIncreasesWhenSaturated() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 10, 1000, 0.5);
+        for (int i = 0; i < 20; i++) {
+            for (Permit permit : acquire(limiter, Priority.HIGH, limiter.getLimit())) {
+                permit.onSuccess();
+            }
+        }
+        assertThat(limiter.getLimit(), greaterThan(4));
+    }
+
+    private FacebookGraphException createGraphException(int errorCode, int httpStatusCode, boolean isTransient) {
+        return new FacebookGraphException("OAuthException", "Error " + errorCode, errorCode, null, httpStatusCode, null, null, isTransient, null);
+    }
+
+    private List<Permit> acquire(ConcurrencyLimiter limiter, Priority priority, int count) {
+        List<Permit> permits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Permit permit = limiter.tryAcquire(priority);
+            assertThat(permit, is(notNullValue()));
+            permits.add(permit);
+        }
+        return permits;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import io.tronalddump.app.facebook.messenger.cache.TagsCache;
+import io.tronalddump.app.facebook.messenger.jfr.Events;
+import io.tronalddump.client.TronaldClient;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Integration tests for {@link Events}.
+ *
+ * @author Marcel Overdijk
+ */
+public class EventsIntegrationTests {
+
+    @Test
+    public void testEventsAreRecordedWhenEnabled() throws Exception {
+        File file = File.createTempFile("events", ".jfr");
+        file.deleteOnExit();
+        try (Recording recording = new Recording()) {
+            recording.enable("io.tronalddump.SendReply");
+            recording.enable("io.tronalddump.MacroCall");
+            recording.start();
+            try (Events.Scope event = Events.sendReply("TAGS_MORE")) {
+                event.result("quick_replies");
+            }
+            try (Events.Scope event = Events.macroCall("randomquote", new String[]{"Hillary Clinton"})) {
+                event.result("Crooked Hillary!");
+            }
+            try (Events.Scope event = Events.sendApi("typingOn")) {
+                event.result("ok");
+            }
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+        assertThat(events.size(), is(2));
+        assertThat(events.get(0).getString("payloadType"), is("TAGS_MORE"));
+        assertThat(events.get(0).getString("replyType"), is("quick_replies"));
+        assertThat(events.get(1).getString("macro"), is("randomquote"));
+        assertThat(events.get(1).getInt("argumentCount"), is(1));
+        assertThat(events.get(1).getInt("outputLength"), is(16));
+    }
+
+    @Test
+    public void testTagsRefreshIsRecordedWhenNotModified() throws Exception {
+        TronaldClient tronaldClient = mock(TronaldClient.class);
+        when(tronaldClient.getTags()).thenReturn(Arrays.asList("Hillary Clinton", "Wall"));
+        TagsCache tagsCache = new TagsCache(tronaldClient, -1);
+        File file = File.createTempFile("events", ".jfr");
+        file.deleteOnExit();
+        try (Recording recording = new Recording()) {
+            recording.enable("io.tronalddump.TagsRefresh");
+            recording.start();
+            tagsCache.getTags();
+            tagsCache.getTags();
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+        assertThat(events.size(), is(2));
+        assertThat(events.get(0).getInt("tagCount"), is(2));
+        assertThat(events.get(0).getBoolean("modified"), is(true));
+        assertThat(events.get(1).getInt("tagCount"), is(2));
+        assertThat(events.get(1).getBoolean("modified"), is(false));
+        assertThat(tagsCache.resolveTag("hilary clinton"), is("Hillary Clinton"));
+    }
+}
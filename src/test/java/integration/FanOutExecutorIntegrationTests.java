@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import io.tronalddump.app.facebook.messenger.callback.FanOutExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Integration tests for {@link FanOutExecutor}.
+ *
+ * @author Marcel Overdijk
+ */
+public class FanOutExecutorIntegrationTests {
+
+    @Test
+    public void testSingleTaskRunsOnCallingThread() {
+        FanOutExecutor executor = new FanOutExecutor(4);
+        Thread[] thread = new Thread[1];
+        executor.invokeAll(Collections.singletonList(() -> thread[0] = Thread.currentThread()));
+        assertThat(thread[0], is(Thread.currentThread()));
+    }
+
+    @Test
+    public void testBatchesShareBoundedThreads() {
+        FanOutExecutor executor = new FanOutExecutor(4);
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        for (int batch = 0; batch < 10; batch++) {
+            List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tasks.add(() -> threads.add(Thread.currentThread()));
+            }
+            executor.invokeAll(tasks);
+        }
+        threads.remove(Thread.currentThread());
+        assertThat(threads.size(), is(lessThanOrEqualTo(4)));
+    }
+
+    @Test
+    public void testBusyPoolRunsTasksOnCallingThread() throws Exception {
+        FanOutExecutor executor = new FanOutExecutor(2);
+        CountDownLatch started = new CountDownLatch(3);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Runnable> blockingTasks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            blockingTasks.add(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        Thread busy = new Thread(() -> executor.invokeAll(blockingTasks));
+        busy.start();
+        started.await();
+        assertThat(executor.getActiveThreads(), is(2));
+
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tasks.add(() -> threads.add(Thread.currentThread()));
+        }
+        executor.invokeAll(tasks);
+        assertThat(threads, is(Collections.singleton(Thread.currentThread())));
+
+        release.countDown();
+        busy.join();
+    }
+}
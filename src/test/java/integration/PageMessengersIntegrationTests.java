@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import com.github.marsbits.restfbmessenger.Messenger;
+import com.github.marsbits.restfbmessenger.send.SendOperations;
+import com.restfb.DefaultJsonMapper;
+import com.restfb.FacebookClient;
+import com.restfb.Parameter;
+import com.restfb.types.send.IdMessageRecipient;
+import com.restfb.types.send.Message;
+import com.restfb.types.send.QuickReply;
+import com.restfb.types.send.SendResponse;
+import io.tronalddump.app.facebook.messenger.callback.MessagingEvent;
+import io.tronalddump.app.facebook.messenger.callback.PageMessengers;
+import io.tronalddump.app.facebook.messenger.callback.TronaldDumpCallbackHandler;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Integration tests for routing events of multiple pages by {@link TronaldDumpCallbackHandler}.
+ *
+ * @author Marcel Overdijk
+ */
+public class PageMessengersIntegrationTests extends AbstractTronaldDumpCallbackHandlerIntegrationTests {
+
+    @Test
+    public void testRepliesAreSentWithMessengerOfPage() {
+        Messenger pageMessenger = mock(Messenger.class);
+        SendOperations pageSendOperations = mock(SendOperations.class);
+        when(pageMessenger.send()).thenReturn(pageSendOperations);
+        PageMessengers messengers = new PageMessengers(messenger, Collections.singletonMap("page2", pageMessenger));
+        callbackHandler.onEvents(messengers, Arrays.asList(
+                MessagingEvent.of("page1", createMessagingItemWithText("1", "hi")),
+                MessagingEvent.of("page2", createMessagingItemWithText("2", "hi"))));
+        verify(sendOperations).textMessage(eq(new IdMessageRecipient("1")), eq("Hi there!"));
+        verify(sendOperations, never()).textMessage(eq(new IdMessageRecipient("2")), anyString());
+        verify(pageSendOperations).textMessage(eq(new IdMessageRecipient("2")), eq("Hi there!"));
+        verify(pageSendOperations, never()).textMessage(eq(new IdMessageRecipient("1")), anyString());
+    }
+
+    @Test
+    public void testMenuRepliesArePostedRenderedWithClientOfPage() {
+        FacebookClient client = mock(FacebookClient.class);
+        FacebookClient pageClient = mock(FacebookClient.class);
+        PageMessengers messengers = new PageMessengers(messenger, Collections.emptyMap(), client, Collections.singletonMap("page2", pageClient));
+        callbackHandler.onEvents(messengers, Arrays.asList(
+                MessagingEvent.of("page1", createMessagingItemWithPostback("1", "GET_STARTED")),
+                MessagingEvent.of("page2", createMessagingItemWithPostback("2", "GET_STARTED")),
+                MessagingEvent.of("page1", createMessagingItemWithText("3", "hi"))));
+        Message message = new Message("Hi, what would you like to hear?");
+        message.addQuickReply(new QuickReply("Random Quote", "RANDOM_QUOTE"));
+        message.addQuickReply(new QuickReply("Tags", "TAGS"));
+        Parameter messageParameter = Parameter.with("message", new DefaultJsonMapper().toJson(message, true));
+        verify(client).publish("me/messages", SendResponse.class, Parameter.with("recipient", new IdMessageRecipient("1")), messageParameter);
+        verify(pageClient).publish("me/messages", SendResponse.class, Parameter.with("recipient", new IdMessageRecipient("2")), messageParameter);
+        verify(sendOperations, never()).quickReplies(any(IdMessageRecipient.class), anyString(), anyList());
+        verify(sendOperations).textMessage(eq(new IdMessageRecipient("3")), eq("Hi there!"));
+    }
+}
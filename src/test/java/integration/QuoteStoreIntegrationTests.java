@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import io.tronalddump.app.facebook.messenger.cache.QuoteStore;
+import io.tronalddump.app.facebook.messenger.cache.QuoteView;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Integration tests for {@link QuoteStore}.
+ *
+ * @author Marcel Overdijk
+ */
+public class QuoteStoreIntegrationTests {
+
+    @Test
+    public void testQuotesAreDeduplicated() {
+        QuoteStore store = new QuoteStore();
+        int first = store.add("q1", "Sorry losers and haters, but my I.Q. is one of the highest.", Arrays.asList("Stupidity", "Myself"));
+        int second = store.add("q2", "Crooked Hillary!", Collections.singletonList("Hillary Clinton"));
+        assertThat(store.add("q1", "Sorry losers and haters, but my I.Q. is one of the highest.", Arrays.asList("Stupidity", "Myself")), is(first));
+        assertThat(second, is(not(first)));
+        assertThat(store.size(), is(2));
+    }
+
+    @Test
+    public void testQuotesAreReadThroughViews() {
+        QuoteStore store = new QuoteStore();
+        QuoteView view = store.get(store.add("q1", "Ich bin ein Gr\u00f6\u00dfter \u2014 believe me!", Arrays.asList("Myself", "Germany")));
+        assertThat(view.getQuoteId(), is("q1"));
+        assertThat(view.getValue(), is("Ich bin ein Gr\u00f6\u00dfter \u2014 believe me!"));
+        assertThat(view.getTags(), contains("Myself", "Germany"));
+    }
+
+    @Test
+    public void testQuotesWithoutIdAreDeduplicatedOnValue() {
+        QuoteStore store = new QuoteStore();
+        int handle = store.add(null, "Money was never a big motivation for me.", null);
+        assertThat(store.add(null, "Money was never a big motivation for me.", null), is(handle));
+        QuoteView view = store.get(handle);
+        assertThat(view.getQuoteId(), is(nullValue()));
+        assertThat(view.getTags(), is(empty()));
+    }
+
+    @Test
+    public void testStoreGrows() {
+        QuoteStore store = new QuoteStore();
+        for (int i = 0; i < 10000; i++) {
+            assertThat(store.add("q" + i, "Quote " + i, Collections.singletonList("tag" + (i % 50))), is(i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertThat(store.add("q" + i, "Quote " + i, null), is(i));
+            assertThat(store.get(i).getValue(), is("Quote " + i));
+            assertThat(store.get(i).getTags(), contains("tag" + (i % 50)));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import com.github.marsbits.restfbmessenger.Messenger;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.util.Modules;
+import io.tronalddump.app.facebook.messenger.cache.QuoteStore;
+import io.tronalddump.app.facebook.messenger.cache.TagsCache;
+import io.tronalddump.app.facebook.messenger.callback.FanOutExecutor;
+import io.tronalddump.app.facebook.messenger.health.ReadinessMonitor;
+import io.tronalddump.app.facebook.messenger.health.UpstreamMonitor;
+import io.tronalddump.app.facebook.messenger.inject.AppModule;
+import io.tronalddump.app.facebook.messenger.limit.ConcurrencyLimiter;
+import io.tronalddump.client.TronaldClient;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Integration tests for {@link ReadinessMonitor} and {@link UpstreamMonitor}.
+ *
+ * @author Marcel Overdijk
+ */
+public class ReadinessIntegrationTests {
+
+    private ConcurrencyLimiter concurrencyLimiter;
+    private UpstreamMonitor upstreamMonitor;
+    private TronaldClient tronaldClient;
+    private TagsCache tagsCache;
+
+    @Before
+    public void setUp() {
+        this.tronaldClient = mock(TronaldClient.class);
+        when(tronaldClient.getTags()).thenReturn(Arrays.asList("Hillary Clinton", "Money"));
+        this.concurrencyLimiter = new ConcurrencyLimiter(10, 1, 10, 1000, 0.9);
+        this.upstreamMonitor = new UpstreamMonitor(0.5, TimeUnit.MINUTES.toMillis(1));
+        this.tagsCache = new TagsCache(tronaldClient);
+    }
+
+    private ReadinessMonitor readinessMonitor(long snapshotInterval) {
+        return readinessMonitor(snapshotInterval, 0, 0);
+    }
+
+    private ReadinessMonitor readinessMonitor(long snapshotInterval, long maxUpstreamLatency, double maxUpstreamErrorRate) {
+        return new ReadinessMonitor(concurrencyLimiter, new FanOutExecutor(4), upstreamMonitor, tagsCache, new QuoteStore(), snapshotInterval, 0.5, maxUpstreamLatency, maxUpstreamErrorRate, 0, 0.0);
+    }
+
+    @Test
+    public void testUpstreamMonitorAverages() {
+        assertThat(upstreamMonitor.getErrorRate(), is(-1.0));
+        upstreamMonitor.record(TimeUnit.MILLISECONDS.toNanos(100), false);
+        upstreamMonitor.record(TimeUnit.MILLISECONDS.toNanos(300), true);
+        assertThat(upstreamMonitor.getLatencyMillis(), is(closeTo(200, 0.001)));
+        assertThat(upstreamMonitor.getErrorRate(), is(closeTo(0.5, 0.001)));
+    }
+
+    @Test
+    public void testTagsAndFanOutAreOnlyReported() {
+        ReadinessMonitor readinessMonitor = readinessMonitor(0);
+        ReadinessMonitor.Snapshot snapshot = readinessMonitor.getSnapshot();
+        assertThat(snapshot.isReady(), is(true));
+        String json = new String(snapshot.getJson(), StandardCharsets.UTF_8);
+        assertThat(json, containsString("\"tagsCached\":false"));
+        assertThat(json, containsString("\"fanOutActive\":0,\"fanOutMaxThreads\":4"));
+        // Probes must not fetch the tags themselves.
+        verify(tronaldClient, never()).getTags();
+        tagsCache.getTags();
+        snapshot = readinessMonitor.getSnapshot();
+        assertThat(new String(snapshot.getJson(), StandardCharsets.UTF_8), containsString("\"tagsCached\":true"));
+    }
+
+    @Test
+    public void testInjectedAppIsReadyWithoutTraffic() {
+        ReadinessMonitor.Snapshot snapshot = injectReadinessMonitor().getSnapshot();
+        assertThat(snapshot.getReasons(), is(Collections.emptyList()));
+        assertThat(snapshot.isReady(), is(true));
+        assertThat(new String(snapshot.getJson(), StandardCharsets.UTF_8), containsString("\"tagsCached\":true"));
+        verify(tronaldClient, times(1)).getTags();
+    }
+
+    @Test
+    public void testInjectedAppIsReadyWhenLoadingTagsFails() {
+        when(tronaldClient.getTags()).thenThrow(new IllegalStateException("Tronald Dump API down"));
+        ReadinessMonitor.Snapshot snapshot = injectReadinessMonitor().getSnapshot();
+        assertThat(snapshot.isReady(), is(true));
+        assertThat(new String(snapshot.getJson(), StandardCharsets.UTF_8), containsString("\"tagsCached\":false"));
+    }
+
+    private ReadinessMonitor injectReadinessMonitor() {
+        Injector injector = Guice.createInjector(Modules
+                .override(new AppModule())
+                .with(new AbstractModule() {
+
+                    @Override
+                    protected void configure() {
+                        bind(TronaldClient.class).toInstance(tronaldClient);
+                        bind(Messenger.class).toInstance(mock(Messenger.class));
+                    }
+                }));
+        // Fetch the tags with the stubbed client rather than with conditional requests to the API.
+        System.setProperty("tags.conditional_refresh", "false");
+        try {
+            return injector.getInstance(ReadinessMonitor.class);
+        } finally {
+            System.clearProperty("tags.conditional_refresh");
+        }
+    }
+
+    @Test
+    public void testNotReadyWhenSaturated() {
+        tagsCache.getTags();
+        for (int i = 0; i < 6; i++) {
+            concurrencyLimiter.tryAcquire(ConcurrencyLimiter.Priority.HIGH);
+        }
+        ReadinessMonitor.Snapshot snapshot = readinessMonitor(0).getSnapshot();
+        assertThat(snapshot.isReady(), is(false));
+        assertThat(snapshot.getReasons(), is(Collections.singletonList("6 of 10 webhook requests in flight")));
+    }
+
+    @Test
+    public void testUpstreamFailuresAreOnlyReportedByDefault() {
+        tagsCache.getTags();
+        upstreamMonitor.record(TimeUnit.SECONDS.toNanos(3), true);
+        ReadinessMonitor.Snapshot snapshot = readinessMonitor(0).getSnapshot();
+        assertThat(snapshot.isReady(), is(true));
+        assertThat(new String(snapshot.getJson(), StandardCharsets.UTF_8), containsString("\"upstreamLatencyMillis\":3000"));
+        snapshot = readinessMonitor(0, 1000, 0.5).getSnapshot();
+        assertThat(snapshot.isReady(), is(false));
+        assertThat(snapshot.getReasons(), is(Arrays.asList(
+                "Tronald Dump API latency of 3000 millis",
+                "Tronald Dump API error rate of 1.00")));
+    }
+
+    @Test
+    public void testSnapshotIsCached() {
+        tagsCache.getTags();
+        ReadinessMonitor readinessMonitor = readinessMonitor(TimeUnit.MINUTES.toMillis(1));
+        ReadinessMonitor.Snapshot snapshot = readinessMonitor.getSnapshot();
+        for (int i = 0; i < 10; i++) {
+            concurrencyLimiter.tryAcquire(ConcurrencyLimiter.Priority.HIGH);
+        }
+        assertThat(readinessMonitor.getSnapshot(), is(sameInstance(snapshot)));
+        assertThat(readinessMonitor.getSnapshot().isReady(), is(true));
+    }
+}
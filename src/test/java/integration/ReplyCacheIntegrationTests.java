@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import com.github.marsbits.restfbmessenger.send.SendOperations;
+import com.restfb.DefaultJsonMapper;
+import com.restfb.FacebookClient;
+import com.restfb.Parameter;
+import com.restfb.types.send.IdMessageRecipient;
+import com.restfb.types.send.Message;
+import com.restfb.types.send.QuickReply;
+import com.restfb.types.send.SendResponse;
+import io.tronalddump.app.facebook.messenger.callback.Reply;
+import io.tronalddump.app.facebook.messenger.callback.ReplyCache;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * Integration tests for {@link ReplyCache}.
+ *
+ * @author Marcel Overdijk
+ */
+public class ReplyCacheIntegrationTests {
+
+    private static final String MENU_REPLY = "Choose a tag: QUICK_REPLIES: tag1=RANDOM_QUOTE_WITH_TAG_tag1, More...=TAGS_MORE_2";
+
+    @Test
+    public void testIsMenu() {
+        assertThat(ReplyCache.isMenu("GET_STARTED"), is(true));
+        assertThat(ReplyCache.isMenu("HELP"), is(true));
+        assertThat(ReplyCache.isMenu("TAGS"), is(true));
+        assertThat(ReplyCache.isMenu("TAGS_MORE_2"), is(true));
+        assertThat(ReplyCache.isMenu("RANDOM_QUOTE"), is(false));
+        assertThat(ReplyCache.isMenu("SEARCH_MORE_2"), is(false));
+        assertThat(ReplyCache.isMenu("tags"), is(false));
+        assertThat(ReplyCache.isMenu(null), is(false));
+    }
+
+    @Test
+    public void testMenuRepliesAreRenderedOnce() {
+        ReplyCache cache = new ReplyCache(10);
+        Reply reply = cache.get("TAGS", MENU_REPLY);
+        assertThat(cache.get("TAGS", MENU_REPLY), is(sameInstance(reply)));
+        assertThat(cache.get("TAGS_MORE_1", MENU_REPLY), is(sameInstance(reply)));
+        assertThat(reply.getType(), is("quick_replies"));
+
+        Message message = new Message("Choose a tag: ");
+        message.addQuickReply(new QuickReply("tag1", "RANDOM_QUOTE_WITH_TAG_tag1"));
+        message.addQuickReply(new QuickReply("More...", "TAGS_MORE_2"));
+        SendOperations sendOperations = mock(SendOperations.class);
+        FacebookClient client = mock(FacebookClient.class);
+        IdMessageRecipient recipient = new IdMessageRecipient("12345");
+        reply.send(sendOperations, client, recipient);
+        verify(client).publish("me/messages", SendResponse.class,
+                Parameter.with("recipient", recipient),
+                Parameter.with("message", new DefaultJsonMapper().toJson(message, true)));
+        verifyZeroInteractions(sendOperations);
+    }
+
+    @Test
+    public void testRenderedRepliesAreSentWithSendOperationsWithoutClient() {
+        SendOperations sendOperations = mock(SendOperations.class);
+        IdMessageRecipient recipient = new IdMessageRecipient("12345");
+        new ReplyCache(10).get("TAGS", MENU_REPLY).send(sendOperations, null, recipient);
+        verify(sendOperations).quickReplies(recipient, "Choose a tag: ", Arrays.asList(
+                new QuickReply("tag1", "RANDOM_QUOTE_WITH_TAG_tag1"),
+                new QuickReply("More...", "TAGS_MORE_2")));
+    }
+
+    @Test
+    public void testOnlyMenuRepliesAreCached() {
+        ReplyCache cache = new ReplyCache(10);
+        Reply reply = cache.get("RANDOM_QUOTE", MENU_REPLY);
+        assertThat(cache.get("RANDOM_QUOTE", MENU_REPLY), is(not(sameInstance(reply))));
+
+        FacebookClient client = mock(FacebookClient.class);
+        SendOperations sendOperations = mock(SendOperations.class);
+        reply.send(sendOperations, client, new IdMessageRecipient("12345"));
+        verifyZeroInteractions(client);
+    }
+
+    @Test
+    public void testTextRepliesAreNotCached() {
+        ReplyCache cache = new ReplyCache(10);
+        Reply reply = cache.get("HELP", "Hi there!");
+        assertThat(cache.get("HELP", "Hi there!"), is(not(sameInstance(reply))));
+        assertThat(reply.getType(), is("text"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedRepliesAreEvicted() {
+        ReplyCache cache = new ReplyCache(2);
+        Reply tags = cache.get("TAGS", MENU_REPLY);
+        Reply more2 = cache.get("TAGS_MORE_2", MENU_REPLY + ", tag2=RANDOM_QUOTE_WITH_TAG_tag2");
+        assertThat(cache.get("TAGS", MENU_REPLY), is(sameInstance(tags)));
+        cache.get("TAGS_MORE_3", MENU_REPLY + ", tag3=RANDOM_QUOTE_WITH_TAG_tag3");
+        assertThat(cache.get("TAGS", MENU_REPLY), is(sameInstance(tags)));
+        assertThat(cache.get("TAGS_MORE_2", MENU_REPLY + ", tag2=RANDOM_QUOTE_WITH_TAG_tag2"), is(not(sameInstance(more2))));
+    }
+}
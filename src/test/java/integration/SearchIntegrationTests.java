@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import com.restfb.types.send.QuickReply;
+import io.tronalddump.app.facebook.messenger.callback.TronaldDumpCallbackHandler;
+import io.tronalddump.client.Page;
+import io.tronalddump.client.Pageable;
+import io.tronalddump.client.Quote;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Integration tests for paged search results of {@link TronaldDumpCallbackHandler}.
+ *
+ * @author Marcel Overdijk
+ */
+public class SearchIntegrationTests extends AbstractTronaldDumpCallbackHandlerIntegrationTests {
+
+    @Test
+    public void testSearchResultsArePagedWithoutSearchingAgain() {
+        List<Quote> quotes = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            Quote quote = new Quote();
+            quote.setQuoteId("wall" + i);
+            quote.setValue("The wall just got " + i + " feet higher.");
+            quotes.add(quote);
+        }
+        when(tronaldClient.search("wall")).thenReturn(new Page<>(quotes, new Pageable(1, 5), 5));
+
+        onMessage("search quote with wall");
+        ArgumentCaptor<String> text = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<List> quickReplies = ArgumentCaptor.forClass(List.class);
+        verify(sendOperations).quickReplies(eq(recipient), text.capture(), quickReplies.capture());
+        assertThat(text.getValue(), is("Found 5 quotes for 'wall' (1-3):\n\n"
+                + "1. The wall just got 1 feet higher.\n\n"
+                + "2. The wall just got 2 feet higher.\n\n"
+                + "3. The wall just got 3 feet higher."));
+        QuickReply more = (QuickReply) quickReplies.getValue().get(0);
+        assertThat(more.getPayload(), startsWith("SEARCH_MORE_"));
+        assertThat(more.getPayload().endsWith("_2"), is(true));
+
+        onPostback(more.getPayload());
+        verifyTextMessage(is("Found 5 quotes for 'wall' (4-5):\n\n"
+                + "4. The wall just got 4 feet higher.\n\n"
+                + "5. The wall just got 5 feet higher."));
+        verify(tronaldClient, times(1)).search("wall");
+    }
+
+    @Test
+    public void testExpiredSearchCursor() {
+        onPostback("SEARCH_MORE_unknown_2");
+        verifyTextMessage(is("Those search results are old news. Search again, it's going to be tremendous!"));
+    }
+}
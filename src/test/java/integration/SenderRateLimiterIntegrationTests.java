@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import io.tronalddump.app.facebook.messenger.limit.SenderRateLimiter;
+import io.tronalddump.app.facebook.messenger.limit.SenderRateLimiter.Result;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Integration tests for {@link SenderRateLimiter}.
+ *
+ * @author Marcel Overdijk
+ */
+public class SenderRateLimiterIntegrationTests {
+
+    @Test
+    public void testSenderIsThrottledAfterBurst() {
+        SenderRateLimiter limiter = new SenderRateLimiter(2, 0.001, 100, 4);
+        assertThat(limiter.tryAcquire("1"), is(Result.ALLOWED));
+        assertThat(limiter.tryAcquire("1"), is(Result.ALLOWED));
+        assertThat(limiter.tryAcquire("1"), is(Result.THROTTLED));
+        assertThat(limiter.tryAcquire("1"), is(Result.THROTTLED_NOTIFIED));
+        assertThat(limiter.tryAcquire("2"), is(Result.ALLOWED));
+    }
+
+    @Test
+    public void testTrackedSendersAreBounded() {
+        SenderRateLimiter limiter = new SenderRateLimiter(2, 0.001, 1000, 16);
+        for (int i = 0; i < 100000; i++) {
+            assertThat(limiter.tryAcquire(String.valueOf(i)), is(Result.ALLOWED));
+        }
+        assertThat(limiter.size(), lessThanOrEqualTo(1000));
+    }
+
+    @Test
+    public void testThrottledSenderIsNotEvicted() {
+        SenderRateLimiter limiter = new SenderRateLimiter(1, 0.001, 10, 1);
+        assertThat(limiter.tryAcquire("spammer"), is(Result.ALLOWED));
+        assertThat(limiter.tryAcquire("spammer"), is(Result.THROTTLED));
+        for (int i = 0; i < 1000; i++) {
+            limiter.tryAcquire(String.valueOf(i));
+        }
+        assertThat(limiter.tryAcquire("spammer"), is(Result.THROTTLED_NOTIFIED));
+        assertThat(limiter.size(), lessThanOrEqualTo(11));
+    }
+}
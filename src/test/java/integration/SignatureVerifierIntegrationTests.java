@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import io.tronalddump.app.facebook.messenger.webhook.SignatureVerifier;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Integration tests for {@link SignatureVerifier}.
+ *
+ * @author Marcel Overdijk
+ */
+public class SignatureVerifierIntegrationTests {
+
+    // HMAC-SHA1 of the body with key 'secret'
+    private static final String BODY = "{\"object\":\"page\",\"entry\":[]}";
+    private static final String SIGNATURE = "sha1=5c993cdbb44ab7691f7ea56930ecffab4994904e";
+
+    private final SignatureVerifier signatureVerifier = new SignatureVerifier("secret");
+
+    @Test
+    public void testValidSignature() throws IOException {
+        assertThat(readVerified(BODY, SIGNATURE), is(BODY));
+        // The cached Mac must be reset between requests.
+        assertThat(readVerified(BODY, SIGNATURE.toUpperCase().replace("SHA1=", "sha1=")), is(BODY));
+    }
+
+    @Test
+    public void testInvalidSignature() throws IOException {
+        assertThat(readVerified(BODY + " ", SIGNATURE), is(nullValue()));
+        assertThat(readVerified(BODY, "sha1=0000000000000000000000000000000000000000"), is(nullValue()));
+    }
+
+    @Test
+    public void testMalformedSignature() throws IOException {
+        assertThat(readVerified(BODY, null), is(nullValue()));
+        assertThat(readVerified(BODY, "sha256=c8e1ebb95c2a6e2ba17d3fe3a1f8e6aa6e9e5d75"), is(nullValue()));
+        assertThat(readVerified(BODY, "sha1=xyz"), is(nullValue()));
+    }
+
+    @Test
+    public void testVerificationDisabledWithoutAppSecret() throws IOException {
+        SignatureVerifier signatureVerifier = new SignatureVerifier(null);
+        byte[] body = signatureVerifier.readVerified(new ByteArrayInputStream(BODY.getBytes(StandardCharsets.UTF_8)), -1, null);
+        assertThat(new String(body, StandardCharsets.UTF_8), is(BODY));
+    }
+
+    private String readVerified(String body, String signature) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        byte[] verified = signatureVerifier.readVerified(new ByteArrayInputStream(bytes), bytes.length, signature);
+        return verified != null ? new String(verified, StandardCharsets.UTF_8) : null;
+    }
+}
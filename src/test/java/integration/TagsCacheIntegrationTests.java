@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import io.tronalddump.app.facebook.messenger.cache.TagsCache;
+import io.tronalddump.client.TronaldClient;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Integration tests for {@link TagsCache}.
+ *
+ * @author Marcel Overdijk
+ */
+public class TagsCacheIntegrationTests {
+
+    private TagsCache tagsCache;
+
+    @Before
+    public void setUp() {
+        TronaldClient tronaldClient = mock(TronaldClient.class);
+        when(tronaldClient.getTags()).thenReturn(Arrays.asList(
+                "Barack Obama", "Hillary Clinton", "Bill Clinton", "Ted Cruz", "Women", "Money", "Wall", "EU"));
+        this.tagsCache = new TagsCache(tronaldClient);
+    }
+
+    @Test
+    public void testResolveExactTag() {
+        assertThat(tagsCache.resolveTag("Hillary Clinton"), is("Hillary Clinton"));
+        assertThat(tagsCache.resolveTag("hillary  clinton "), is("Hillary Clinton"));
+        assertThat(tagsCache.resolveTag("eu"), is("EU"));
+    }
+
+    @Test
+    public void testResolveMisspelledTag() {
+        assertThat(tagsCache.resolveTag("hilary clinton"), is("Hillary Clinton"));
+        assertThat(tagsCache.resolveTag("hillery clintin"), is("Hillary Clinton"));
+        assertThat(tagsCache.resolveTag("barak obama"), is("Barack Obama"));
+        assertThat(tagsCache.resolveTag("mony"), is("Money"));
+        assertThat(tagsCache.resolveTag("ted cruzz"), is("Ted Cruz"));
+    }
+
+    @Test
+    public void testResolveUnknownTag() {
+        assertThat(tagsCache.resolveTag("weather"), is(nullValue()));
+        assertThat(tagsCache.resolveTag("us"), is(nullValue()));
+        assertThat(tagsCache.resolveTag("donald trump"), is(nullValue()));
+    }
+
+    @Test
+    public void testResolveTagWithoutTags() {
+        TagsCache tagsCache = new TagsCache(mock(TronaldClient.class));
+        assertThat(tagsCache.resolveTag("hillary clinton"), is(nullValue()));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import com.sun.net.httpserver.HttpServer;
+import io.tronalddump.app.facebook.messenger.cache.TagsCache;
+import io.tronalddump.app.facebook.messenger.cache.TagsFetcher;
+import io.tronalddump.app.facebook.messenger.health.UpstreamMonitor;
+import io.tronalddump.client.TronaldClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Integration tests for {@link TagsFetcher} against a stub Tronald Dump API.
+ *
+ * @author Marcel Overdijk
+ */
+public class TagsFetcherIntegrationTests {
+
+    private HttpServer server;
+    private String apiUrl;
+    private volatile String body;
+    private volatile String etag;
+    private final List<String> ifNoneMatch = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        this.body = "{\"count\":2,\"total\":2,\"_embedded\":{\"tag\":[\"Hillary Clinton\",{\"value\":\"Money\",\"_links\":{}}]},\"_links\":{}}";
+        this.etag = "\"v1\"";
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/tag", exchange -> {
+            String requestEtag = exchange.getRequestHeaders().getFirst("If-None-Match");
+            synchronized (ifNoneMatch) {
+                ifNoneMatch.add(requestEtag);
+            }
+            if (etag != null && etag.equals(requestEtag)) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                if (etag != null) {
+                    exchange.getResponseHeaders().set("ETag", etag);
+                }
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        this.apiUrl = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testConditionalFetch() {
+        TagsFetcher tagsFetcher = new TagsFetcher(apiUrl, new UpstreamMonitor(0.1, 60000), 5000);
+        assertThat(tagsFetcher.fetch(), is(Arrays.asList("Hillary Clinton", "Money")));
+        assertThat(tagsFetcher.fetch(), is(nullValue()));
+        body = "{\"_embedded\":{\"tag\":[\"Hillary Clinton\",\"Money\",\"Wall\"]}}";
+        etag = "\"v2\"";
+        assertThat(tagsFetcher.fetch(), is(Arrays.asList("Hillary Clinton", "Money", "Wall")));
+        assertThat(ifNoneMatch, is(Arrays.asList(null, "\"v1\"", "\"v1\"")));
+    }
+
+    @Test
+    public void testTagsCacheKeepsTagsWhenNotModified() {
+        TagsFetcher tagsFetcher = new TagsFetcher(apiUrl, new UpstreamMonitor(0.1, 60000), 5000);
+        // A negative refresh interval refreshes on every call.
+        TagsCache tagsCache = new TagsCache(mock(TronaldClient.class), -1, tagsFetcher, -1);
+        List<String> tags = tagsCache.getTags();
+        assertThat(tagsCache.getTags(), is(sameInstance(tags)));
+        assertThat(tagsCache.resolveTag("mony"), is("Money"));
+        body = "{\"_embedded\":{\"tag\":[\"Hillary Clinton\",\"Money\",\"Wall\"]}}";
+        etag = "\"v2\"";
+        assertThat(tagsCache.resolveTag("wal"), is((String) null));
+        assertThat(tagsCache.resolveTag("walls"), is("Wall"));
+        assertThat(ifNoneMatch.size(), is(5));
+    }
+
+    @Test
+    public void testTagsCacheOnlyRefreshesSoonerWithValidator() {
+        etag = null;
+        TagsFetcher tagsFetcher = new TagsFetcher(apiUrl, new UpstreamMonitor(0.1, 60000), 5000);
+        TagsCache tagsCache = new TagsCache(mock(TronaldClient.class), TimeUnit.DAYS.toMillis(1), tagsFetcher, -1);
+        tagsCache.getTags();
+        tagsCache.getTags();
+        assertThat(tagsFetcher.hasValidator(), is(false));
+        assertThat(ifNoneMatch.size(), is(1));
+
+        etag = "\"v1\"";
+        tagsFetcher = new TagsFetcher(apiUrl, new UpstreamMonitor(0.1, 60000), 5000);
+        tagsCache = new TagsCache(mock(TronaldClient.class), TimeUnit.DAYS.toMillis(1), tagsFetcher, -1);
+        tagsCache.getTags();
+        tagsCache.getTags();
+        assertThat(tagsFetcher.hasValidator(), is(true));
+        assertThat(ifNoneMatch, is(Arrays.asList(null, null, "\"v1\"")));
+    }
+}
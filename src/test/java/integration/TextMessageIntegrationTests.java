@@ -20,12 +20,25 @@ import com.restfb.types.send.ButtonTemplatePayload;
 import com.restfb.types.send.PostbackButton;
 import com.restfb.types.send.QuickReply;
 import io.tronalddump.app.facebook.messenger.callback.TronaldDumpCallbackHandler;
+import io.tronalddump.app.facebook.messenger.trace.Span;
+import io.tronalddump.app.facebook.messenger.trace.SpanExporter;
+import io.tronalddump.app.facebook.messenger.trace.Tracer;
+import io.tronalddump.app.facebook.messenger.webhook.Pseudonymizer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.Test;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.List;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.collection.IsIn.isOneOf;
 
 /**
@@ -221,4 +234,37 @@ public class TextMessageIntegrationTests extends AbstractTronaldDumpCallbackHand
         onMessage("gobbledygook");
         verifyTextMessage(is("OK! Ask me something else or type 'help'."));
     }
+
+    @Test
+    public void testSenderIdIsTracedAsPseudonym() throws Exception {
+        File file = File.createTempFile("traces", ".json");
+        file.deleteOnExit();
+        Tracer.configure(1, new SpanExporter(file, 1024 * 1024, 1), "salt");
+        try (Span trace = Tracer.startTrace("POST /webhook")) {
+            onMessage("hi");
+        } finally {
+            Tracer.configure(0, new SpanExporter(new File("unused"), 0, 0));
+        }
+        verifyTextMessage(is("Hi there!"));
+        String traces = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertThat(traces, containsString("\"sender.id\":\"" + new Pseudonymizer("salt").pseudonymize(senderId) + "\""));
+        assertThat(traces, not(containsString("\"sender.id\":\"" + senderId + "\"")));
+    }
+
+    @Test
+    public void testSendReplyEventCarriesPayloadTypeOnly() throws Exception {
+        File file = File.createTempFile("events", ".jfr");
+        file.deleteOnExit();
+        try (Recording recording = new Recording()) {
+            recording.enable("io.tronalddump.SendReply");
+            recording.start();
+            onMessage("hi");
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+        assertThat(events.size(), is(1));
+        assertThat(events.get(0).getString("payloadType"), is("text"));
+        assertThat(events.get(0).getString("replyType"), is("text"));
+    }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import io.tronalddump.app.facebook.messenger.trace.Span;
+import io.tronalddump.app.facebook.messenger.trace.SpanExporter;
+import io.tronalddump.app.facebook.messenger.trace.Tracer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Integration tests for {@link Tracer}.
+ *
+ * @author Marcel Overdijk
+ */
+public class TracerIntegrationTests {
+
+    @After
+    public void tearDown() {
+        Tracer.configure(0, new SpanExporter(new File("unused"), 0, 0));
+    }
+
+    @Test
+    public void testUnsampledTraceIsNoop() {
+        Tracer.configure(0, new SpanExporter(new File("unused"), 0, 0));
+        try (Span trace = Tracer.startTrace("test")) {
+            assertThat(trace.isSampled(), is(false));
+            assertThat(Tracer.startSpan("child").isSampled(), is(false));
+        }
+    }
+
+    @Test
+    public void testSampledTraceIsExportedWithChildSpans() throws Exception {
+        File file = File.createTempFile("traces", ".json");
+        file.deleteOnExit();
+        Tracer.configure(1, new SpanExporter(file, 1024 * 1024, 1));
+        try (Span trace = Tracer.startTrace("POST /webhook")) {
+            try (Span span = Tracer.startSpan("verify signature")) {
+                assertThat(span.isSampled(), is(true));
+            }
+            Thread thread = new Thread(Tracer.wrap(() -> {
+                try (Span span = Tracer.startSpan("bot.reply").tag("sender.id", "1")) {
+                    assertThat(span.isSampled(), is(true));
+                }
+            }));
+            thread.start();
+            thread.join();
+        }
+        assertThat(Tracer.startSpan("after").isSampled(), is(false));
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertThat(lines.size(), is(1));
+        assertThat(lines.get(0), containsString("\"name\":\"verify signature\""));
+        assertThat(lines.get(0), containsString("\"name\":\"bot.reply\""));
+        assertThat(lines.get(0), containsString("\"tags\":{\"sender.id\":\"1\"}"));
+        assertThat(lines.get(0).split("\"parentId\"").length - 1, is(2));
+    }
+}
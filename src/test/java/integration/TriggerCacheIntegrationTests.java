@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import com.rivescript.RiveScript;
+import com.rivescript.macro.Subroutine;
+import io.tronalddump.app.facebook.messenger.broadcast.InMemorySubscriberStore;
+import io.tronalddump.app.facebook.messenger.cache.QuoteStore;
+import io.tronalddump.app.facebook.messenger.cache.SearchCache;
+import io.tronalddump.app.facebook.messenger.cache.SearchCursors;
+import io.tronalddump.app.facebook.messenger.cache.TagsCache;
+import io.tronalddump.app.facebook.messenger.inject.RiveScriptProvider;
+import io.tronalddump.app.facebook.messenger.rivescript.Brain;
+import io.tronalddump.app.facebook.messenger.rivescript.TriggerCache;
+import io.tronalddump.client.Quote;
+import io.tronalddump.client.TronaldClient;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Integration tests for {@link TriggerCache}.
+ *
+ * @author Marcel Overdijk
+ */
+public class TriggerCacheIntegrationTests {
+
+    @Test
+    public void testNormalize() {
+        assertThat(TriggerCache.normalize("  Tell me,  a QUOTE!\t"), is("tell me a quote"));
+        assertThat(TriggerCache.normalize("RANDOM_QUOTE_WITH_TAG_Hillary Clinton"), is("random_quote_with_tag_hillary clinton"));
+    }
+
+    @Test
+    public void testMacrosAreCalledAgainOnHit() {
+        AtomicInteger counter = new AtomicInteger();
+        Subroutine randomQuote = TriggerCache.record((rivescript, args) -> "Quote " + args[0] + " " + counter.incrementAndGet());
+        RiveScript bot = mock(RiveScript.class);
+        when(bot.reply(anyString(), eq("tell me a quote about money"))).thenAnswer(invocation ->
+                "Here: " + randomQuote.call(bot, new String[]{"money"}) + " Enjoy!");
+        TriggerCache cache = new TriggerCache(10);
+
+        assertThat(cache.reply(bot, "12345", "Tell me a quote about money"), is("Here: Quote money 1 Enjoy!"));
+        assertThat(cache.reply(bot, "67890", "tell me a quote   about MONEY!"), is("Here: Quote money 2 Enjoy!"));
+        verify(bot, times(1)).reply(anyString(), anyString());
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void testMacrosAreCalledAgainOnHitWithBundledBrain() {
+        TronaldClient tronaldClient = mock(TronaldClient.class);
+        Quote first = new Quote();
+        first.setValue("Quote 1");
+        Quote second = new Quote();
+        second.setValue("Quote 2");
+        when(tronaldClient.getRandomQuote()).thenReturn(first, second);
+        QuoteStore store = new QuoteStore();
+        RiveScriptProvider provider = new RiveScriptProvider(tronaldClient, new TagsCache(tronaldClient),
+                new SearchCache(store, 10, 60000), new SearchCursors(store, 10, 60000), new InMemorySubscriberStore());
+        RiveScript bot = provider.get();
+        TriggerCache cache = new TriggerCache(10);
+
+        assertThat(cache.reply(bot, "12345", "tell me a quote"), is("Quote 1"));
+        assertThat(cache.reply(bot, "67890", "Tell me a quote!"), is("Quote 2"));
+        verify(tronaldClient, times(2)).getRandomQuote();
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void testUncacheableRepliesAreNotCached() {
+        RiveScript bot = mock(RiveScript.class);
+        when(bot.reply(anyString(), eq("how are you"))).thenAnswer(invocation ->
+                "I'm great!" + TriggerCache.NO_CACHE.call(bot, new String[0]));
+        TriggerCache cache = new TriggerCache(10);
+
+        assertThat(cache.reply(bot, "12345", "How are you?"), is("I'm great!"));
+        assertThat(cache.reply(bot, "12345", "How are you?"), is("I'm great!"));
+        verify(bot, times(2)).reply(anyString(), anyString());
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void testMarkUncacheable() {
+        String code = TriggerCache.markUncacheable("+ hi\n- Hi there!\n\n+ how are you\n- I'm great!\n- I'm doing great!\n\n+ what time is it\n- It is <date>\n");
+        assertThat(code, containsString("- Hi there!\n"));
+        assertThat(code, containsString("- I'm great!<call>nocache</call>\n- I'm doing great!<call>nocache</call>\n"));
+        assertThat(code, containsString("- It is <date><call>nocache</call>\n"));
+        assertThat(code, not(containsString("Hi there!<call>")));
+    }
+
+    @Test
+    public void testSearchTriggersAreNotCached() throws IOException {
+        String code;
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("rivescript/tronald-dump.rive")) {
+            code = new Scanner(in, "UTF-8").useDelimiter("\\A").next();
+        }
+        assertThat(code, containsString("+ SEARCH\\_MORE\\_*\n- <call>searchmore <star></call><call>nocache</call>\n"));
+        assertThat(code, containsString("- <call>searchquote \"<star2>\"</call><call>nocache</call>\n"));
+    }
+
+    @Test
+    public void testReloadStartsWithEmptyCache() {
+        RiveScript first = mock(RiveScript.class);
+        when(first.reply(anyString(), anyString())).thenReturn("First");
+        RiveScript second = mock(RiveScript.class);
+        when(second.reply(anyString(), anyString())).thenReturn("Second");
+        AtomicInteger loads = new AtomicInteger();
+        Brain brain = new Brain(() -> loads.getAndIncrement() == 0 ? first : second, Collections.emptyList(), 10);
+
+        assertThat(brain.reply("12345", "hi"), is("First"));
+        assertThat(brain.reply("12345", "hi"), is("First"));
+        brain.reload();
+        assertThat(brain.reply("12345", "hi"), is("Second"));
+        verify(first, times(1)).reply(anyString(), anyString());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import io.tronalddump.app.facebook.messenger.callback.PageMessengers;
+import io.tronalddump.app.facebook.messenger.callback.TronaldDumpCallbackHandler;
+import io.tronalddump.app.facebook.messenger.servlet.TronaldDumpWebhookServlet;
+import io.tronalddump.app.facebook.messenger.webhook.SignatureVerifier;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Integration tests for {@link TronaldDumpWebhookServlet}.
+ *
+ * @author Marcel Overdijk
+ */
+public class TronaldDumpWebhookServletIntegrationTests {
+
+    private final PageMessengers messengers = mock(PageMessengers.class);
+    private final TronaldDumpCallbackHandler callbackHandler = mock(TronaldDumpCallbackHandler.class);
+    private final TronaldDumpWebhookServlet servlet = new TronaldDumpWebhookServlet(messengers, callbackHandler, new SignatureVerifier(null), null, 64);
+
+    @Test
+    public void testTooLargeBodyIsRejectedBeforeReading() throws ServletException, IOException {
+        HttpServletRequest req = createRequest();
+        when(req.getContentLength()).thenReturn(65);
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        servlet.service(req, resp);
+        verify(resp).setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        verify(req, never()).getInputStream();
+        verify(callbackHandler, never()).onEvents(any(PageMessengers.class), anyList());
+    }
+
+    @Test
+    public void testBodyWithoutContentLengthIsRejected() throws ServletException, IOException {
+        HttpServletRequest req = createRequest();
+        when(req.getContentLength()).thenReturn(-1);
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        servlet.service(req, resp);
+        verify(resp).setStatus(HttpServletResponse.SC_LENGTH_REQUIRED);
+        verify(req, never()).getInputStream();
+    }
+
+    @Test
+    public void testInvalidJsonIsBadRequest() throws ServletException, IOException {
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        servlet.service(createRequest("{\"object\":\"page\",\"entry\":["), resp);
+        verify(resp).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        verify(callbackHandler, never()).onEvents(any(PageMessengers.class), anyList());
+    }
+
+    @Test
+    public void testValidCallbackIsHandled() throws ServletException, IOException {
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        servlet.service(createRequest("{\"object\":\"page\",\"entry\":[]}"), resp);
+        verify(resp).setStatus(HttpServletResponse.SC_OK);
+        verify(callbackHandler).onEvents(any(PageMessengers.class), anyList());
+    }
+
+    private HttpServletRequest createRequest() {
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        when(req.getMethod()).thenReturn("POST");
+        return req;
+    }
+
+    private HttpServletRequest createRequest(String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        InputStream in = new ByteArrayInputStream(bytes);
+        HttpServletRequest req = createRequest();
+        when(req.getContentLength()).thenReturn(bytes.length);
+        when(req.getInputStream()).thenReturn(new ServletInputStream() {
+
+            @Override
+            public int read() throws IOException {
+                return in.read();
+            }
+        });
+        return req;
+    }
+}
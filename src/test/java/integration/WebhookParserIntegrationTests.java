@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import io.tronalddump.app.facebook.messenger.callback.MessagingEvent;
+import io.tronalddump.app.facebook.messenger.webhook.WebhookParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Integration tests for {@link WebhookParser}.
+ *
+ * @author Marcel Overdijk
+ */
+public class WebhookParserIntegrationTests {
+
+    private final WebhookParser parser = new WebhookParser();
+
+    @Test
+    public void testParseMessagesAndPostbacks() throws IOException {
+        List<MessagingEvent> events = parse("{'object':'page','entry':[{" +
+                "'messaging':[" +
+                "{'sender':{'id':'1'},'recipient':{'id':'99'},'timestamp':1,'message':{'mid':'m1','seq':1,'text':'hi'}}," +
+                "{'sender':{'id':'2'},'recipient':{'id':'99'},'message':{'text':'Tags','quick_reply':{'payload':'TAGS'}}}," +
+                "{'sender':{'id':'3'},'recipient':{'id':'99'},'postback':{'payload':'GET_STARTED','referral':{'ref':'x'}}}," +
+                "{'sender':{'id':'99'},'recipient':{'id':'1'},'message':{'is_echo':true,'text':'Hi there!'}}," +
+                "{'sender':{'id':'1'},'recipient':{'id':'99'},'delivery':{'mids':['m1'],'watermark':1}}" +
+                "],'id':'99','time':1}]}");
+        assertThat(events, hasSize(3));
+        assertEvent(events.get(0), "1", MessagingEvent.Type.MESSAGE, "hi");
+        assertEvent(events.get(1), "2", MessagingEvent.Type.QUICK_REPLY, "TAGS");
+        assertEvent(events.get(2), "3", MessagingEvent.Type.POSTBACK, "GET_STARTED");
+    }
+
+    @Test
+    public void testParseWithoutEntries() throws IOException {
+        assertThat(parse("{'object':'page'}"), hasSize(0));
+    }
+
+    private void assertEvent(MessagingEvent event, String senderId, MessagingEvent.Type type, String payload) {
+        assertThat(event.getPageId(), is("99"));
+        assertThat(event.getSenderId(), is(senderId));
+        assertThat(event.getType(), is(type));
+        assertThat(event.getPayload(), is(payload));
+    }
+
+    private List<MessagingEvent> parse(String json) throws IOException {
+        return parser.parse(new ByteArrayInputStream(json.replace('\'', '"').getBytes(StandardCharsets.UTF_8)));
+    }
+}
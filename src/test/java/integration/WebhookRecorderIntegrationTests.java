@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package integration;
+
+import io.tronalddump.app.facebook.messenger.callback.MessagingEvent;
+import io.tronalddump.app.facebook.messenger.webhook.RecordedRequest;
+import io.tronalddump.app.facebook.messenger.webhook.WebhookLogReader;
+import io.tronalddump.app.facebook.messenger.webhook.WebhookRecorder;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Integration tests for {@link WebhookRecorder} and {@link WebhookLogReader}.
+ *
+ * @author Marcel Overdijk
+ */
+public class WebhookRecorderIntegrationTests {
+
+    @Test
+    public void testRecordedRequestsAreMaskedAndReadBack() throws Exception {
+        File file = File.createTempFile("webhook", ".log");
+        file.deleteOnExit();
+        try (WebhookRecorder recorder = new WebhookRecorder(file, "salt", true)) {
+            recorder.record(1000, 1500, Arrays.asList(
+                    new MessagingEvent("page", "12345", MessagingEvent.Type.MESSAGE, "mail me at john@doe.com or call 0612345678"),
+                    new MessagingEvent("page", "67890", MessagingEvent.Type.POSTBACK, "TAGS_MORE_2")));
+            recorder.record(1250, 800, Collections.singletonList(
+                    new MessagingEvent(null, "12345", MessagingEvent.Type.MESSAGE, "hi")));
+        }
+        // A truncated last request is ignored.
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[]{0, 0, 0});
+        }
+        List<RecordedRequest> requests;
+        try (WebhookLogReader reader = new WebhookLogReader(file)) {
+            requests = reader.readAll();
+        }
+        assertThat(requests.size(), is(2));
+        RecordedRequest first = requests.get(0);
+        assertThat(first.getTimestamp(), is(1000L));
+        assertThat(first.getDurationMicros(), is(1500L));
+        MessagingEvent message = first.getEvents().get(0);
+        assertThat(message.getPageId(), is("page"));
+        assertThat(message.getSenderId(), is(not("12345")));
+        assertThat(message.getPayload(), is("mail me at user@example.com or call 00000"));
+        MessagingEvent postback = first.getEvents().get(1);
+        assertThat(postback.getType(), is(MessagingEvent.Type.POSTBACK));
+        assertThat(postback.getPayload(), is("TAGS_MORE_2"));
+        MessagingEvent second = requests.get(1).getEvents().get(0);
+        assertThat(second.getPageId(), is((String) null));
+        assertThat(second.getSenderId(), is(message.getSenderId()));
+    }
+
+    @Test
+    public void testMessageTextsAreDroppedByDefault() throws Exception {
+        File file = File.createTempFile("webhook", ".log");
+        file.deleteOnExit();
+        try (WebhookRecorder recorder = new WebhookRecorder(file, "salt")) {
+            recorder.record(1000, 1500, Arrays.asList(
+                    new MessagingEvent("page", "12345", MessagingEvent.Type.MESSAGE, "my address is Main Street 1"),
+                    new MessagingEvent("page", "12345", MessagingEvent.Type.POSTBACK, "RANDOM_QUOTE")));
+        }
+        List<MessagingEvent> events;
+        try (WebhookLogReader reader = new WebhookLogReader(file)) {
+            events = reader.readAll().get(0).getEvents();
+        }
+        assertThat(events.get(0).getPayload(), is(nullValue()));
+        assertThat(events.get(1).getPayload(), is("RANDOM_QUOTE"));
+    }
+
+    @Test
+    public void testQuickReplyPayloadsAreKeptAsIs() throws Exception {
+        for (boolean keepText : new boolean[]{false, true}) {
+            File file = File.createTempFile("webhook", ".log");
+            file.deleteOnExit();
+            try (WebhookRecorder recorder = new WebhookRecorder(file, "salt", keepText)) {
+                recorder.record(1000, 1500, Arrays.asList(
+                        new MessagingEvent("page", "12345", MessagingEvent.Type.QUICK_REPLY, "SEARCH_MORE_1234567"),
+                        new MessagingEvent("page", "12345", MessagingEvent.Type.MESSAGE, "search quote containing 1234567")));
+            }
+            List<MessagingEvent> events;
+            try (WebhookLogReader reader = new WebhookLogReader(file)) {
+                events = reader.readAll().get(0).getEvents();
+            }
+            assertThat(events.get(0).getType(), is(MessagingEvent.Type.QUICK_REPLY));
+            assertThat(events.get(0).getPayload(), is("SEARCH_MORE_1234567"));
+            assertThat(events.get(1).getType(), is(MessagingEvent.Type.MESSAGE));
+            assertThat(events.get(1).getPayload(), is(keepText ? "search quote containing 00000" : null));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSaltIsRequired() throws Exception {
+        File file = File.createTempFile("webhook", ".log");
+        file.deleteOnExit();
+        new WebhookRecorder(file, "");
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package replay;
+
+import com.github.marsbits.restfbmessenger.Messenger;
+import com.google.inject.AbstractModule;
+import com.google.inject.Injector;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import com.rivescript.RiveScript;
+import io.tronalddump.app.facebook.messenger.callback.FanOutExecutor;
+import io.tronalddump.app.facebook.messenger.callback.MessagingEvent;
+import io.tronalddump.app.facebook.messenger.callback.TronaldDumpCallbackHandler;
+import io.tronalddump.app.facebook.messenger.limit.ConcurrencyLimiter;
+import io.tronalddump.app.facebook.messenger.rivescript.Brain;
+import io.tronalddump.client.TronaldClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares the blocking execution model (senders handled one after the other, Send API calls made in line) with the
+ * current one (senders handled in parallel, sender actions overlapping the reply) on synthetic webhook batches.
+ * <p>
+ * Usage: {@code ./gradlew benchmarkHandler}. The {@code benchmark.requests} (default 200),
+ * {@code benchmark.batch_size} (default 5, each event from another sender), {@code benchmark.concurrency} (default
+ * 4), {@code benchmark.upstream_latency} (default 50) and {@code benchmark.send_latency} (default 20) system
+ * properties set the workload and the stubbed latencies in millis. Every reply makes one Tronald Dump API call; the
+ * brain itself is stubbed, so only the execution model is measured. The fan-out pool is sized by
+ * {@code webhook.max_threads} (default 8) just like in the app; once its threads are busy each request thread works
+ * through its own batch, so the overlapped run is never slower than the blocking one.
+ *
+ * @author Marcel Overdijk
+ */
+public class HandlerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int requests = Integer.getInteger("benchmark.requests", 200);
+        int batchSize = Integer.getInteger("benchmark.batch_size", 5);
+        int concurrency = Integer.getInteger("benchmark.concurrency", 4);
+        long upstreamLatency = Long.getLong("benchmark.upstream_latency", 50);
+        long sendLatency = Long.getLong("benchmark.send_latency", 20);
+        int maxThreads = Integer.getInteger("webhook.max_threads", 8);
+
+        System.out.println(format("%d requests of %d events, %d concurrent requests, %d fan-out threads, upstream %d ms, send %d ms",
+                requests, batchSize, concurrency, maxThreads, upstreamLatency, sendLatency));
+        for (String mode : Arrays.asList("blocking", "overlapped", "blocking", "overlapped")) {
+            FanOutExecutor executor = mode.equals("blocking") ? new BlockingFanOutExecutor() : new FanOutExecutor(maxThreads);
+            run(mode, executor, requests, batchSize, concurrency, upstreamLatency, sendLatency);
+        }
+        System.exit(0);
+    }
+
+    private static void run(String mode, FanOutExecutor fanOutExecutor, int requests, int batchSize, int concurrency, long upstreamLatency, long sendLatency) throws Exception {
+        Injector injector = WebhookReplay.createInjector(upstreamLatency, sendLatency, new AbstractModule() {
+
+            @Override
+            protected void configure() {
+                bind(FanOutExecutor.class).toInstance(fanOutExecutor);
+                bind(ConcurrencyLimiter.class).toInstance(new ConcurrencyLimiter(10000, 10000, 10000, 60000, 0.9));
+            }
+
+            @Provides
+            @Singleton
+            protected Brain provideBrain(TronaldClient tronaldClient) {
+                RiveScript bot = mock(RiveScript.class);
+                when(bot.reply(anyString(), anyString())).thenAnswer(invocation -> {
+                    tronaldClient.getRandomQuote();
+                    return "Sorry losers and haters, but my I.Q. is one of the highest - and you all know it!";
+                });
+                return new Brain(() -> bot, Collections.emptyList());
+            }
+        });
+        TronaldDumpCallbackHandler callbackHandler = injector.getInstance(TronaldDumpCallbackHandler.class);
+        Messenger messenger = injector.getInstance(Messenger.class);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long[] latencies = new long[requests];
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            List<MessagingEvent> events = new ArrayList<>(batchSize);
+            for (int j = 0; j < batchSize; j++) {
+                events.add(new MessagingEvent("page", i + "-" + j, MessagingEvent.Type.POSTBACK, "RANDOM_QUOTE"));
+            }
+            int index = i;
+            executor.execute(() -> {
+                long requestNanos = System.nanoTime();
+                callbackHandler.onEvents(messenger, events);
+                latencies[index] = System.nanoTime() - requestNanos;
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        Arrays.sort(latencies);
+        System.out.println(format("%-10s  %7.1f events/s  latency (ms): p50 %6.1f  p99 %6.1f  max %6.1f",
+                mode, requests * batchSize / seconds,
+                WebhookReplay.percentile(latencies, 50), WebhookReplay.percentile(latencies, 99), WebhookReplay.percentile(latencies, 100)));
+    }
+
+    /**
+     * Handles the senders of a batch one after the other and makes all Send API calls in line.
+     */
+    private static class BlockingFanOutExecutor extends FanOutExecutor {
+
+        BlockingFanOutExecutor() {
+            super(1);
+        }
+
+        @Override
+        public Executor getSendExecutor() {
+            return Runnable::run;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package replay;
+
+import io.tronalddump.app.facebook.messenger.limit.SenderRateLimiter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.lang.String.format;
+
+/**
+ * Measures the per-check overhead of the {@link SenderRateLimiter} over millions of distinct sender ids.
+ * <p>
+ * Usage: {@code ./gradlew benchmarkRateLimiter}. The {@code benchmark.senders} (default 2000000),
+ * {@code benchmark.checks} (default 10000000 per round), {@code benchmark.threads} (default 8) and
+ * {@code benchmark.max_senders} (default 100000) system properties set the workload. Every thread checks sender ids
+ * picked from its own pseudo random sequence, so most checks either create a bucket or evict one. Sender ids are
+ * created up front, so only the checks are measured. The first rounds warm up the JIT.
+ *
+ * @author Marcel Overdijk
+ */
+public class SenderRateLimiterBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int senders = Integer.getInteger("benchmark.senders", 2000000);
+        int checks = Integer.getInteger("benchmark.checks", 10000000);
+        int threads = Integer.getInteger("benchmark.threads", 8);
+        int maxSenders = Integer.getInteger("benchmark.max_senders", 100000);
+
+        String[] senderIds = new String[senders];
+        for (int i = 0; i < senders; i++) {
+            senderIds[i] = String.valueOf(1000000000000000L + i * 7919L);
+        }
+        System.out.println(format("%d checks over %d senders on %d threads, tracking at most %d senders",
+                checks, senders, threads, maxSenders));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int round = 1; round <= ROUNDS; round++) {
+            SenderRateLimiter limiter = new SenderRateLimiter(10, 1, maxSenders, 64);
+            List<Callable<Integer>> tasks = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                int seed = round * 31 + t;
+                tasks.add(() -> {
+                    int allowed = 0;
+                    int x = seed;
+                    for (int i = 0; i < checks / threads; i++) {
+                        x ^= x << 13;
+                        x ^= x >>> 17;
+                        x ^= x << 5;
+                        if (limiter.tryAcquire(senderIds[(x & Integer.MAX_VALUE) % senderIds.length]) == SenderRateLimiter.Result.ALLOWED) {
+                            allowed++;
+                        }
+                    }
+                    return allowed;
+                });
+            }
+            long startNanos = System.nanoTime();
+            int allowed = 0;
+            for (Future<Integer> future : executor.invokeAll(tasks)) {
+                allowed += future.get();
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+            System.out.println(format("round %d  %6.1f ns/check per thread  %6.1f M checks/s  %d allowed  %d tracked",
+                    round, (double) elapsedNanos * threads / checks, checks / (elapsedNanos / 1e3), allowed, limiter.size()));
+        }
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package replay;
+
+import io.tronalddump.app.facebook.messenger.cache.TagIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Random;
+
+import static java.lang.String.format;
+
+/**
+ * Compares tag lookups through the {@link TagIndex} with a linear scan computing the Levenshtein distance to every
+ * tag.
+ * <p>
+ * Usage: {@code ./gradlew benchmarkTagIndex}. The {@code benchmark.tags} (default {@code 100,1000,10000}) and
+ * {@code benchmark.lookups} (default 10000) system properties set the workload. Tags are random phrases of one to
+ * three words; lookups are tags with one or two typos, or unknown words. The linear scan normalizes the tags up front
+ * like the index, gets fewer lookups on large tag sets to keep its run short, and must resolve every lookup it makes
+ * to the same tag as the index. The first rounds warm up the JIT.
+ *
+ * @author Marcel Overdijk
+ */
+public class TagIndexBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int lookups = Integer.getInteger("benchmark.lookups", 10000);
+        for (String count : System.getProperty("benchmark.tags", "100,1000,10000").split(",")) {
+            Random random = new Random(42);
+            List<String> tags = createTags(random, Integer.parseInt(count.trim()));
+            List<String> normalizedTags = new ArrayList<>(tags.size());
+            for (String tag : tags) {
+                normalizedTags.add(normalize(tag));
+            }
+            String[] queries = new String[lookups];
+            for (int i = 0; i < lookups; i++) {
+                queries[i] = i % 4 == 3 ? createWord(random) : misspell(random, tags.get(random.nextInt(tags.size())));
+            }
+            int scanLookups = Math.max(10, Math.min(lookups, lookups * 1000 / tags.size()));
+            System.out.println(format("%d tags, %d lookups (%d by linear scan)", tags.size(), lookups, scanLookups));
+            for (int round = 1; round <= ROUNDS; round++) {
+                long startNanos = System.nanoTime();
+                TagIndex index = new TagIndex(tags);
+                long buildNanos = System.nanoTime() - startNanos;
+                String[] resolved = new String[lookups];
+                startNanos = System.nanoTime();
+                for (int i = 0; i < lookups; i++) {
+                    resolved[i] = index.resolve(queries[i]);
+                }
+                long indexNanos = System.nanoTime() - startNanos;
+                startNanos = System.nanoTime();
+                for (int i = 0; i < scanLookups; i++) {
+                    String expected = scan(tags, normalizedTags, queries[i]);
+                    if (!Objects.equals(expected, resolved[i])) {
+                        throw new IllegalStateException(format("'%s' resolved to '%s' by the index but to '%s' by the linear scan", queries[i], resolved[i], expected));
+                    }
+                }
+                long scanNanos = System.nanoTime() - startNanos;
+                System.out.println(format("round %d  index %8.1f us/lookup (built in %6.1f ms)  linear scan %10.1f us/lookup",
+                        round, indexNanos / 1e3 / lookups, buildNanos / 1e6, scanNanos / 1e3 / scanLookups));
+            }
+        }
+    }
+
+    /**
+     * Resolves the given tag like {@link TagIndex#resolve(String)}, but by computing the distance to every tag.
+     */
+    private static String scan(List<String> tags, List<String> normalizedTags, String tag) {
+        String normalized = normalize(tag);
+        int match = normalizedTags.indexOf(normalized);
+        if (match != -1) {
+            return tags.get(match);
+        }
+        int length = normalized.length();
+        int maxDistance = length <= 3 ? 0 : length <= 7 ? 1 : 2;
+        int best = -1;
+        int bestDistance = maxDistance + 1;
+        for (int i = 0; i < normalizedTags.size(); i++) {
+            int distance = distance(normalizedTags.get(i), normalized);
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return best != -1 ? tags.get(best) : null;
+    }
+
+    private static String normalize(String tag) {
+        return tag.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+    }
+
+    private static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] temp = previous;
+            previous = current;
+            current = temp;
+        }
+        return previous[b.length()];
+    }
+
+    private static List<String> createTags(Random random, int count) {
+        List<String> tags = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder tag = new StringBuilder(createWord(random));
+            for (int words = random.nextInt(3); words > 0; words--) {
+                tag.append(' ').append(createWord(random));
+            }
+            tags.add(tag.toString());
+        }
+        return tags;
+    }
+
+    private static String createWord(Random random) {
+        char[] word = new char[4 + random.nextInt(6)];
+        for (int i = 0; i < word.length; i++) {
+            word[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(word);
+    }
+
+    /**
+     * Returns the given tag with one or two characters replaced, deleted or inserted.
+     */
+    private static String misspell(Random random, String tag) {
+        StringBuilder misspelled = new StringBuilder(tag);
+        for (int typos = 1 + random.nextInt(2); typos > 0; typos--) {
+            int i = random.nextInt(misspelled.length());
+            char c = (char) ('a' + random.nextInt(26));
+            switch (random.nextInt(3)) {
+                case 0:
+                    misspelled.setCharAt(i, c);
+                    break;
+                case 1:
+                    if (misspelled.length() > 1) {
+                        misspelled.deleteCharAt(i);
+                    }
+                    break;
+                default:
+                    misspelled.insert(i, c);
+            }
+        }
+        return misspelled.toString();
+    }
+}
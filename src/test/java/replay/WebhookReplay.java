@@ -0,0 +1,188 @@
+/*
+ * Copyright 2015-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package replay;
+
+import com.github.marsbits.restfbmessenger.Messenger;
+import com.github.marsbits.restfbmessenger.send.SendOperations;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.util.Modules;
+import io.tronalddump.app.facebook.messenger.cache.TagsCache;
+import io.tronalddump.app.facebook.messenger.callback.TronaldDumpCallbackHandler;
+import io.tronalddump.app.facebook.messenger.inject.AppModule;
+import io.tronalddump.app.facebook.messenger.limit.SenderRateLimiter;
+import io.tronalddump.app.facebook.messenger.webhook.RecordedRequest;
+import io.tronalddump.app.facebook.messenger.webhook.WebhookLogReader;
+import io.tronalddump.client.Page;
+import io.tronalddump.client.Pageable;
+import io.tronalddump.client.Quote;
+import io.tronalddump.client.TronaldClient;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Replays a webhook log recorded by the {@code WebhookRecorder} through the {@link TronaldDumpCallbackHandler}
+ * against stubbed {@link TronaldClient} and {@link Messenger}, and reports throughput and latency.
+ * <p>
+ * Usage: {@code ./gradlew replayWebhooks -Plog=webhook.log -Pspeed=10}. A speed of {@code 0} replays as fast as
+ * possible. The {@code replay.concurrency} (default 16), {@code replay.upstream_latency} (default 50) and
+ * {@code replay.send_latency} (default 20) system properties set the number of concurrent requests and the stubbed
+ * latencies in millis. The sender rate limiter is disabled, as accelerated replays would otherwise be throttled.
+ * <p>
+ * Latencies are measured from the time a request was due, so a backlog in the replay counts against the build
+ * being measured.
+ *
+ * @author Marcel Overdijk
+ */
+public class WebhookReplay {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: WebhookReplay <log> [speed]");
+            System.exit(1);
+        }
+        File log = new File(args[0]);
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        int concurrency = Integer.getInteger("replay.concurrency", 16);
+        long upstreamLatency = Long.getLong("replay.upstream_latency", 50);
+        long sendLatency = Long.getLong("replay.send_latency", 20);
+
+        List<RecordedRequest> requests;
+        try (WebhookLogReader reader = new WebhookLogReader(log)) {
+            requests = reader.readAll();
+        }
+        if (requests.isEmpty()) {
+            System.out.println("Nothing to replay");
+            return;
+        }
+
+        Injector injector = createInjector(upstreamLatency, sendLatency);
+        TronaldDumpCallbackHandler callbackHandler = injector.getInstance(TronaldDumpCallbackHandler.class);
+        Messenger messenger = injector.getInstance(Messenger.class);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long[] latencies = new long[requests.size()];
+        AtomicLong events = new AtomicLong();
+        long firstTimestamp = requests.get(0).getTimestamp();
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < requests.size(); i++) {
+            RecordedRequest request = requests.get(i);
+            long dueNanos = startNanos;
+            if (speed > 0) {
+                dueNanos += (long) (TimeUnit.MILLISECONDS.toNanos(request.getTimestamp() - firstTimestamp) / speed);
+                long sleepNanos = dueNanos - System.nanoTime();
+                if (sleepNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                }
+            }
+            int index = i;
+            long due = dueNanos;
+            executor.execute(() -> {
+                callbackHandler.onEvents(messenger, request.getEvents());
+                latencies[index] = System.nanoTime() - due;
+                events.addAndGet(request.getEvents().size());
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+        long[] recorded = new long[requests.size()];
+        for (int i = 0; i < recorded.length; i++) {
+            recorded[i] = TimeUnit.MICROSECONDS.toNanos(requests.get(i).getDurationMicros());
+        }
+        Arrays.sort(latencies);
+        Arrays.sort(recorded);
+        System.out.println(format("Replayed %d requests (%d events) in %.1f s at speed %s with %d threads",
+                requests.size(), events.get(), seconds, speed > 0 ? speed + "x" : "max", concurrency));
+        System.out.println(format("Throughput: %.1f requests/s, %.1f events/s", requests.size() / seconds, events.get() / seconds));
+        System.out.println(format("Latency (ms):  p50 %.1f  p90 %.1f  p99 %.1f  max %.1f",
+                percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99), percentile(latencies, 100)));
+        System.out.println(format("Recorded (ms): p50 %.1f  p90 %.1f  p99 %.1f  max %.1f",
+                percentile(recorded, 50), percentile(recorded, 90), percentile(recorded, 99), percentile(recorded, 100)));
+        System.exit(0);
+    }
+
+    /**
+     * Creates an injector with {@link TronaldClient} and {@link Messenger} stubs answering after the given latencies,
+     * a tags cache fetching with the {@link TronaldClient} stub, a disabled sender rate limiter and the given overriding
+     * modules.
+     */
+    static Injector createInjector(long upstreamLatency, long sendLatency, Module... overrides) {
+        Quote quote = new Quote();
+        quote.setValue("An 'extremely credible source' has called my office and told me that Barack Obama's birth certificate is a fraud.");
+        List<String> tags = new ArrayList<>();
+        for (int i = 1; i <= 60; i++) {
+            tags.add("Tag " + i);
+        }
+        Page<Quote> page = new Page<>(Collections.singletonList(quote), new Pageable(1, 1), 1);
+        TronaldClient tronaldClient = mock(TronaldClient.class, withSettings().stubOnly().defaultAnswer(delayed(upstreamLatency, invocation -> {
+            switch (invocation.getMethod().getName()) {
+                case "getRandomQuote":
+                    return quote;
+                case "search":
+                    return page;
+                case "getTags":
+                    return tags;
+                default:
+                    return null;
+            }
+        })));
+        SendOperations sendOperations = mock(SendOperations.class, withSettings().stubOnly().defaultAnswer(delayed(sendLatency, invocation -> null)));
+        Messenger messenger = mock(Messenger.class, withSettings().stubOnly().defaultAnswer(invocation -> sendOperations));
+        return Guice.createInjector(Modules
+                .override(new AppModule())
+                .with(new AbstractModule() {
+
+                    @Override
+                    protected void configure() {
+                        bind(TronaldClient.class).toInstance(tronaldClient);
+                        bind(Messenger.class).toInstance(messenger);
+                        bind(TagsCache.class).toInstance(new TagsCache(tronaldClient));
+                        bind(SenderRateLimiter.class).toInstance(new SenderRateLimiter(Integer.MAX_VALUE, 1e9, 100000, 64));
+                    }
+                }, Modules.combine(overrides)));
+    }
+
+    static Answer<Object> delayed(long millis, Answer<Object> answer) {
+        return invocation -> {
+            if (millis > 0) {
+                Thread.sleep(millis);
+            }
+            return answer.answer(invocation);
+        };
+    }
+
+    static double percentile(long[] sorted, int percentile) {
+        int index = Math.max(0, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1);
+        return sorted[index] / 1e6;
+    }
+}